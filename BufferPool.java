@@ -0,0 +1,248 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of byte buffers and of double, float and short arrays, by size
+ * class, shared by the send and read paths so that decoding or encoding
+ * messages one after the other reuses the same memory instead of allocating
+ * whole-message arrays.
+ * <p>
+ * The size classes are the powers of 2 and three steps between each (1,
+ * 1.25, 1.5 and 1.75 times a power of 2), so a request is served with a
+ * buffer at most 25 % larger than asked. A pooled array is thus usually
+ * longer than asked and its users must keep the useful length themselves
+ * (a ByteBuffer gets its limit set to the requested size). At most
+ * MAX_PER_CLASS free buffers are kept per class. Byte buffers are on the
+ * heap or direct (outside the heap), as chosen when the pool is created.
+ */
+public class BufferPool {
+
+    static final int MIN_BITS = 10; // plus petite classe : 1024 éléments
+    static final int MAX_BITS = 30; // plus grande classe : 2^30 éléments (au-delà, pas de mise en commun)
+    static final int STEPS = 4; // classes par puissance de 2
+    static final int CLASSES = (MAX_BITS - MIN_BITS) * STEPS + 1; // nombre de classes
+    static final int MAX_PER_CLASS = 4; // tampons libres gardés par classe
+
+    /**
+     * Pool shared by DosSend and DosRead; direct byte buffers with
+     * -Ddosook.pool.direct=true
+     */
+    static final BufferPool SHARED = new BufferPool(Boolean.getBoolean("dosook.pool.direct"));
+
+    final boolean direct; // tampons d'octets hors du tas
+    private final ArrayDeque<ByteBuffer>[] bytes; // tampons libres par classe
+    private final ArrayDeque<double[]>[] doubles; // tableaux libres par classe
+    private final ArrayDeque<float[]>[] floats;
+    private final ArrayDeque<short[]>[] shorts;
+    final AtomicLong hits = new AtomicLong(); // demandes servies par un tampon libre
+    final AtomicLong misses = new AtomicLong(); // demandes qui ont dû allouer
+
+    /**
+     * Constructor
+     *
+     * @param direct true for direct byte buffers, false for heap byte buffers
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(boolean direct) {
+        this.direct = direct;
+        bytes = new ArrayDeque[CLASSES];
+        doubles = new ArrayDeque[CLASSES];
+        floats = new ArrayDeque[CLASSES];
+        shorts = new ArrayDeque[CLASSES];
+        for (int k = 0; k < CLASSES; k++) {
+            bytes[k] = new ArrayDeque<>();
+            doubles[k] = new ArrayDeque<>();
+            floats[k] = new ArrayDeque<>();
+            shorts[k] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * @param size a number of elements
+     * @return the smallest size class that can hold it (CLASSES or more if
+     *         it is too large to be pooled)
+     */
+    static int sizeClass(int size) {
+        if (size <= 1 << MIN_BITS) {
+            return 0;
+        }
+        int k = 31 - Integer.numberOfLeadingZeros(size - 1); // puissance de 2 juste en dessous
+        int j = ((size - 1) >> (k - 2)) - STEPS + 1; // quarts au-dessus de la puissance de 2 (1 à 4)
+        return (k - MIN_BITS) * STEPS + j;
+    }
+
+    /**
+     * @param sizeClass a size class
+     * @return the number of elements of the buffers of the class
+     */
+    static int capacity(int sizeClass) {
+        int k = MIN_BITS + sizeClass / STEPS;
+        return (1 << k) + (sizeClass % STEPS) * (1 << (k - 2));
+    }
+
+    /**
+     * Get a little endian byte buffer whose limit is size
+     *
+     * @param size the number of bytes needed
+     * @return a cleared buffer, whose capacity is the one of the size class of size
+     */
+    public ByteBuffer acquireBytes(int size) {
+        int k = sizeClass(size);
+        ByteBuffer buffer = null;
+        if (k < CLASSES) {
+            synchronized (bytes[k]) {
+                buffer = bytes[k].poll();
+            }
+        }
+        if (buffer == null) {
+            misses.incrementAndGet();
+            int capacity = k < CLASSES ? capacity(k) : size;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        } else {
+            hits.incrementAndGet();
+        }
+        buffer.clear().limit(size);
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Give back a byte buffer obtained from acquireBytes; it must not be used
+     * any more
+     *
+     * @param buffer the buffer, or null
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() != direct) {
+            return;
+        }
+        int k = sizeClass(buffer.capacity());
+        if (k < CLASSES && capacity(k) == buffer.capacity()) { // sinon tampon hors classe, laissé au ramasse-miettes
+            synchronized (bytes[k]) {
+                if (bytes[k].size() < MAX_PER_CLASS) {
+                    bytes[k].push(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get an array of at least size values. The values are not cleared.
+     *
+     * @param size the number of values needed
+     * @return an array whose length is the capacity of the size class of size
+     */
+    public double[] acquireDoubles(int size) {
+        double[] array = take(doubles, size);
+        return array != null ? array : new double[length(size)];
+    }
+
+    /**
+     * Get an array of at least size values, for the float variant of the
+     * stages. The values are not cleared.
+     *
+     * @param size the number of values needed
+     * @return an array whose length is the capacity of the size class of size
+     */
+    public float[] acquireFloats(int size) {
+        float[] array = take(floats, size);
+        return array != null ? array : new float[length(size)];
+    }
+
+    /**
+     * Get an array of at least size values, for the fixed-point variant of
+     * the stages. The values are not cleared.
+     *
+     * @param size the number of values needed
+     * @return an array whose length is the capacity of the size class of size
+     */
+    public short[] acquireShorts(int size) {
+        short[] array = take(shorts, size);
+        return array != null ? array : new short[length(size)];
+    }
+
+    /**
+     * Give back an array obtained from acquireDoubles; it must not be used
+     * any more
+     *
+     * @param array the array, or null
+     */
+    public void release(double[] array) {
+        if (array != null) {
+            give(doubles, array, array.length);
+        }
+    }
+
+    /**
+     * Give back an array obtained from acquireFloats
+     *
+     * @param array the array, or null
+     */
+    public void release(float[] array) {
+        if (array != null) {
+            give(floats, array, array.length);
+        }
+    }
+
+    /**
+     * Give back an array obtained from acquireShorts
+     *
+     * @param array the array, or null
+     */
+    public void release(short[] array) {
+        if (array != null) {
+            give(shorts, array, array.length);
+        }
+    }
+
+    /**
+     * Take a free array of the size class of size, counting a hit, or count
+     * a miss and return null
+     */
+    private <T> T take(ArrayDeque<T>[] free, int size) {
+        int k = sizeClass(size);
+        T array = null;
+        if (k < CLASSES) {
+            synchronized (free[k]) {
+                array = free[k].poll();
+            }
+        }
+        (array == null ? misses : hits).incrementAndGet();
+        return array;
+    }
+
+    /**
+     * @return the length of a new array for size elements
+     */
+    private static int length(int size) {
+        int k = sizeClass(size);
+        return k < CLASSES ? capacity(k) : size;
+    }
+
+    /**
+     * Keep an array of the given length if it is of a size class and its
+     * class is not full
+     */
+    private <T> void give(ArrayDeque<T>[] free, T array, int length) {
+        int k = sizeClass(length);
+        if (k < CLASSES && capacity(k) == length) { // sinon tableau hors classe, laissé au ramasse-miettes
+            synchronized (free[k]) {
+                if (free[k].size() < MAX_PER_CLASS) {
+                    free[k].push(array);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the hit rate and counters of the pool, for the statistics
+     */
+    @Override
+    public String toString() {
+        long h = hits.get();
+        long m = misses.get();
+        return String.format("Tampons : %d réutilisés, %d alloués (%.0f %% de réutilisation)",
+                h, m, h + m == 0 ? 0.0 : 100.0 * h / (h + m));
+    }
+}
@@ -0,0 +1,386 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bulk encoding of a file of messages with DosSend, in one JVM.
+ * <p>
+ * The messages are read one per line (UTF-8), or as binary records made of
+ * a 16 bits big endian length followed by the payload, the same layout as
+ * the frame. A reader thread, several modulation threads and the writer
+ * (the main thread) are linked by bounded queues, and at most QUEUE
+ * messages are in progress at any time, so memory does not depend on the
+ * number of messages. The writer puts the messages back in their input
+ * order, in one wav file with a silence of DosSend.BURST_GAP symbols
+ * between them, or in one file per message.
+ */
+public class DosBatch {
+
+    static final int QUEUE = 64; // messages en cours au plus, par défaut
+
+    boolean prefixed = false; // messages précédés de leur longueur sur 2 octets au lieu d'une ligne chacun
+    final int threads; // fils de modulation
+    final int queue; // messages lus et pas encore écrits, au plus
+    boolean compress = false; // options de DosSend appliquées à chaque message
+    String precision = DosDsp.DOUBLE;
+    int rate = 44100;
+    double rolloff = 0;
+
+    int messages; // messages écrits
+    int errors; // messages refusés (trop longs)
+    long samples; // échantillons écrits, silences compris
+
+    /**
+     * A message going through the pipeline
+     */
+    static class Job {
+        final int index; // rang du message dans le fichier d'entrée
+        final byte[] message; // charge utile
+        byte[] pcm; // signal modulé, PCM 16 bits little endian
+        String error; // raison du refus, null si le message est modulé
+
+        Job(int index, byte[] message) {
+            this.index = index;
+            this.message = message;
+        }
+    }
+
+    static final Job END = new Job(-1, null); // fin du flux de messages, une par fil de modulation
+
+    private final Semaphore inFlight; // places libres pour de nouveaux messages
+    private final BlockingQueue<Job> toModulate;
+    private final BlockingQueue<Job> toWrite;
+    private volatile IOException readError; // erreur de lecture du fichier de messages
+    private volatile RuntimeException modulationError; // erreur imprévue d'un fil de modulation
+
+    /**
+     * Constructor
+     *
+     * @param threads the number of modulation threads
+     * @param queue   the maximum number of messages in progress
+     */
+    public DosBatch(int threads, int queue) {
+        this.threads = threads;
+        this.queue = queue;
+        inFlight = new Semaphore(queue);
+        toModulate = new ArrayBlockingQueue<>(queue);
+        toWrite = new ArrayBlockingQueue<>(queue);
+    }
+
+    /**
+     * @return a sender with the options of the batch, one per modulation thread
+     */
+    DosSend newSender() {
+        DosSend sender = new DosSend();
+        sender.compress = compress;
+        sender.precision = precision;
+        sender.FECH = rate;
+        sender.rolloff = rolloff;
+        return sender;
+    }
+
+    /**
+     * Read the messages and queue them for modulation, then queue one END
+     * per modulation thread
+     *
+     * @param in the file of messages
+     */
+    void readMessages(InputStream in) {
+        int index = 0;
+        try {
+            if (prefixed) {
+                DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+                while (true) {
+                    int length;
+                    try {
+                        length = data.readUnsignedShort(); // longueur, poids fort en premier
+                    } catch (EOFException e) {
+                        break; // fin du fichier entre deux messages
+                    }
+                    byte[] message = new byte[length];
+                    data.readFully(message);
+                    submit(new Job(index++, message));
+                }
+            } else {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    submit(new Job(index++, line.getBytes(StandardCharsets.UTF_8)));
+                }
+            }
+        } catch (EOFException e) {
+            readError = new IOException("message " + (index + 1) + " incomplet");
+        } catch (IOException e) {
+            readError = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (int t = 0; t < threads; t++) {
+                toModulate.put(END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait for a free place, then queue a message for modulation
+     */
+    private void submit(Job job) throws InterruptedException {
+        inFlight.acquire();
+        toModulate.put(job);
+    }
+
+    /**
+     * Modulate the queued messages until END, each one into its PCM samples.
+     * An unexpected error stops the thread and is reported to the writer
+     * through modulationError.
+     */
+    void modulateMessages() {
+        DosSend sender = newSender();
+        try {
+            while (true) {
+                Job job = toModulate.take();
+                if (job == END) {
+                    toWrite.put(END);
+                    return;
+                }
+                char[] frame = null;
+                try {
+                    frame = sender.buildFrame(job.message);
+                } catch (IllegalArgumentException e) {
+                    job.error = e.getMessage(); // message trop long pour le champ de longueur
+                }
+                if (frame != null) {
+                    sender.modulateData(sender.charToBits(frame));
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(sender.dataLength * 2);
+                    sender.outStream = out;
+                    sender.writeNormalizeWavData(); // conversion PCM de DosSend, dans le tableau
+                    sender.release();
+                    job.pcm = out.toByteArray();
+                }
+                toWrite.put(job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            modulationError = e;
+            toWrite.offer(END); // réveille l'écriture, qui s'arrête sur l'erreur
+        }
+    }
+
+    /**
+     * Encode all the messages of a file
+     *
+     * @param in     the file of messages
+     * @param output the wav file to create, or the directory of the wav
+     *               files with split
+     * @param split  one wav file per message instead of a single one
+     * @throws IOException          if a file cannot be read or written
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    public void run(InputStream in, Path output, boolean split) throws IOException, InterruptedException {
+        // Fils démons : ils ne retiennent pas la JVM si l'écriture échoue
+        Thread reader = new Thread(() -> readMessages(in), "lecture");
+        reader.setDaemon(true);
+        reader.start();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(this::modulateMessages, "modulation-" + t);
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        WavWriter wav = split ? null : WavWriter.create(output, rate, 1, 16);
+        ByteBuffer gap = ByteBuffer.allocate(newSender().symbolStart(DosSend.BURST_GAP) * 2); // silence entre deux messages
+        Map<Integer, Job> pending = new HashMap<>(); // messages modulés en avance sur l'ordre d'entrée
+        int next = 0; // rang du prochain message à écrire
+        int ended = 0; // fils de modulation terminés
+        try {
+            while (ended < threads) {
+                Job job = toWrite.take();
+                if (modulationError != null) {
+                    throw modulationError; // un message manquerait : inutile d'attendre la suite
+                }
+                if (job == END) {
+                    ended++;
+                    continue;
+                }
+                pending.put(job.index, job);
+                // Écriture dans l'ordre d'entrée, dès que le message suivant est prêt
+                while ((job = pending.remove(next)) != null) {
+                    if (job.error != null) {
+                        System.err.println("Message " + (job.index + 1) + " ignoré : " + job.error);
+                        errors++;
+                    } else if (split) {
+                        try (WavWriter file = WavWriter.create(output.resolve(String.format("message_%05d.wav", job.index + 1)),
+                                rate, 1, 16)) {
+                            writeFully(file, ByteBuffer.wrap(job.pcm));
+                        }
+                        messages++;
+                        samples += job.pcm.length / 2;
+                    } else {
+                        if (messages > 0) {
+                            gap.clear();
+                            writeFully(wav, gap);
+                            samples += gap.capacity() / 2;
+                        }
+                        writeFully(wav, ByteBuffer.wrap(job.pcm));
+                        messages++;
+                        samples += job.pcm.length / 2;
+                    }
+                    inFlight.release();
+                    next++;
+                }
+            }
+        } finally {
+            if (wav != null) {
+                wav.close();
+            }
+        }
+        reader.join();
+        if (readError != null) {
+            throw readError;
+        }
+    }
+
+    /**
+     * Write a whole buffer in a wav file
+     */
+    private static void writeFully(WavWriter wav, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            wav.write(buffer);
+        }
+    }
+
+    /**
+     * Usage: java DosBatch messages.txt [sortie.wav | --split dossier] [--prefixed]
+     * [--threads n] [--queue n] [-z] [--rate n] [--shape r] [--precision p] [--metrics]
+     * <p>
+     * Exit status: 0 when every message is written, 1 on a bad invocation or
+     * a read/write error, 2 when some messages were refused (too long) and
+     * the others written.
+     */
+    public static void main(String[] args) {
+        String input = null; // fichier de messages, "-" pour l'entrée standard
+        String output = "DosOok_messages.wav"; // wav de sortie, ou dossier avec --split
+        boolean split = false;
+        boolean prefixed = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = QUEUE;
+        boolean compress = false;
+        String precision = DosDsp.DOUBLE;
+        int rate = 44100;
+        double rolloff = 0;
+        boolean metrics = false;
+        for (int i = 0; i < args.length; i++) {
+            try {
+                if (args[i].equals("-") || !args[i].startsWith("-")) {
+                    if (input == null) {
+                        input = args[i];
+                    } else {
+                        output = args[i];
+                    }
+                } else if (args[i].equals("--split") && i + 1 < args.length) {
+                    split = true;
+                    output = args[++i];
+                } else if (args[i].equals("--prefixed")) {
+                    prefixed = true;
+                } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--queue") && i + 1 < args.length) {
+                    queue = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-z")) {
+                    compress = true;
+                } else if (args[i].equals("--precision") && i + 1 < args.length) {
+                    precision = args[++i];
+                } else if (args[i].equals("--rate") && i + 1 < args.length) {
+                    rate = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--shape") && i + 1 < args.length) {
+                    rolloff = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--metrics")) {
+                    metrics = true;
+                    DosMetrics.enable();
+                } else {
+                    System.err.println("Option inconnue : " + args[i]);
+                    System.exit(1);
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Option invalide : " + args[i - 1] + " " + args[i]); // nombre attendu
+                System.exit(1);
+            }
+        }
+        if (input == null) {
+            System.err.println("Usage : java DosBatch messages.txt [sortie.wav | --split dossier] [--prefixed]");
+            System.err.println("        [--threads n] [--queue n] [-z] [--rate n] [--shape r] [--precision p] [--metrics]");
+            System.exit(1);
+        }
+        if (threads < 1 || queue < 1) {
+            System.err.println("--threads et --queue doivent être au moins 1");
+            System.exit(1);
+        }
+        if (rolloff < 0 || rolloff > 1) {
+            System.err.println("Arrondi des transitions hors de [0, 1] : " + rolloff);
+            System.exit(1);
+        }
+        if (rate <= 2 * DosRead.FP) { // Shannon : la porteuse FP doit rester sous la moitié de la fréquence
+            System.err.println("Fréquence d'échantillonnage trop basse pour la porteuse : " + rate + " Hz");
+            System.exit(1);
+        }
+        if (!DosDsp.isPrecision(precision)) {
+            System.err.println("Précision inconnue : " + precision);
+            System.exit(1);
+        }
+
+        DosBatch batch = new DosBatch(threads, queue);
+        batch.prefixed = prefixed;
+        batch.compress = compress;
+        batch.precision = precision;
+        batch.rate = rate;
+        batch.rolloff = rolloff;
+        long t0 = System.nanoTime();
+        try (InputStream in = input.equals("-") ? System.in : new FileInputStream(input)) {
+            Path path = Paths.get(output);
+            if (split) {
+                Files.createDirectories(path);
+            }
+            batch.run(in, path, split);
+        } catch (IOException e) {
+            System.err.println("Erreur : " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        System.out.println("Messages encodés : " + batch.messages + (batch.errors > 0 ? " (" + batch.errors + " ignorés)" : ""));
+        System.out.println("\tSortie : " + output + (split ? " (un fichier par message)" : ""));
+        System.out.printf(Locale.ROOT, "\tDurée audio : %.1f s%n", (double) batch.samples / rate);
+        System.out.printf(Locale.ROOT, "\tTemps : %.2f s avec %d fils, %.1f messages/s%n", seconds, threads,
+                batch.messages / seconds);
+        if (metrics) {
+            DosMetrics.dump(System.err);
+        }
+        if (batch.errors > 0) {
+            System.exit(2); // messages ignorés : les autres sont écrits, mais le lot est incomplet
+        }
+    }
+}
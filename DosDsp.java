@@ -0,0 +1,366 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Float and fixed-point variants of the demodulation stages of DosRead
+ * (rectifier, low pass filter, mean level of each symbol), and the check of
+ * their accuracy against the double path.
+ * <p>
+ * The float variant stores the signal between -1 and 1 like the double
+ * path, on 4 bytes instead of 8. The fixed-point variant keeps the 16 bits
+ * PCM samples as they are (Q15: 32768 is 1.0) and computes the sums in int,
+ * on 2 bytes per sample. Both give the symbol levels in the unit of the
+ * threshold (full scale 2^16), so the decision is the same code for all.
+ * The modulation side has the same variants in DosSend.modulateSymbol.
+ */
+public class DosDsp {
+
+    static final String DOUBLE = "double"; // calcul en double (chemin de référence)
+    static final String FLOAT = "float"; // calcul en float, 2 fois moins de mémoire
+    static final String FIXED = "fixed"; // calcul en virgule fixe sur 16 bits, 4 fois moins de mémoire
+    static final double SCALE = 32768.0; // pleine échelle des échantillons PCM 16 bits
+    static final double LEVEL_SCALE = 65536.0; // pleine échelle des niveaux de symbole (unité du seuil)
+
+    /**
+     * @param precision a precision name
+     * @return true if it is DOUBLE, FLOAT or FIXED
+     */
+    static boolean isPrecision(String precision) {
+        return precision.equals(DOUBLE) || precision.equals(FLOAT) || precision.equals(FIXED);
+    }
+
+    /**
+     * Convert 16 bits little endian PCM to floats between -1 and 1
+     *
+     * @param pcm  the PCM bytes, from index 0
+     * @param dest the array to fill
+     * @param n    the number of samples
+     */
+    public static void toFloat(ByteBuffer pcm, float[] dest, int n) {
+        for (int i = 0; i < n; i++) {
+            dest[i] = (float) (pcm.getShort(2 * i) / SCALE);
+        }
+    }
+
+    /**
+     * Copy 16 bits little endian PCM to an array of Q15 samples
+     *
+     * @param pcm  the PCM bytes, from index 0
+     * @param dest the array to fill
+     * @param n    the number of samples
+     */
+    public static void toFixed(ByteBuffer pcm, short[] dest, int n) {
+        for (int i = 0; i < n; i++) {
+            dest[i] = pcm.getShort(2 * i);
+        }
+    }
+
+    /**
+     * Reverse the negative values, like DosRead.audioRectifier
+     *
+     * @param audio the signal
+     * @param n     the number of samples
+     */
+    public static void rectify(float[] audio, int n) {
+        for (int i = 0; i < n; i++) {
+            audio[i] = Math.abs(audio[i]);
+        }
+    }
+
+    /**
+     * Reverse the negative values; -32768 becomes 32767, the largest Q15
+     * value (1 LSB of error)
+     *
+     * @param audio the Q15 signal
+     * @param n     the number of samples
+     */
+    public static void rectify(short[] audio, int n) {
+        for (int i = 0; i < n; i++) {
+            int v = Math.abs(audio[i]);
+            audio[i] = (short) Math.min(v, Short.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Moving average over the last window samples, like DosRead.audioLPFilter
+     * (shorter window for the first samples)
+     *
+     * @param in     the signal
+     * @param out    the filtered signal (not in)
+     * @param n      the number of samples
+     * @param window the number of samples to average
+     */
+    public static void lowPass(float[] in, float[] out, int n, int window) {
+        for (int i = 0; i < n; i++) {
+            int start = Math.max(0, i - window + 1);
+            float sum = 0;
+            for (int j = start; j <= i; j++) {
+                sum += in[j];
+            }
+            out[i] = sum / (i + 1 - start);
+        }
+    }
+
+    /**
+     * Moving average of a Q15 signal, with an int sum and a rounded division
+     *
+     * @param in     the Q15 signal
+     * @param out    the filtered signal (not in)
+     * @param n      the number of samples
+     * @param window the number of samples to average (at most 65536, so
+     *               that the sum fits in an int)
+     */
+    public static void lowPass(short[] in, short[] out, int n, int window) {
+        for (int i = 0; i < n; i++) {
+            int start = Math.max(0, i - window + 1);
+            int sum = 0;
+            for (int j = start; j <= i; j++) {
+                sum += in[j];
+            }
+            int count = i + 1 - start;
+            out[i] = (short) Math.floorDiv(2 * sum + count, 2 * count); // Arrondi au plus proche
+        }
+    }
+
+    /**
+     * Mean level of each symbol, like DosRead.audioResampleAndThreshold
+     * before the decision
+     *
+     * @param audio  the filtered signal
+     * @param n      the number of samples
+     * @param period the number of samples by symbol, not necessarily an integer
+     * @param levels the level of each symbol, in the unit of the threshold
+     */
+    public static void symbolLevels(float[] audio, int n, double period, double[] levels) {
+        int count = DspKernels.symbolCount(n, period);
+        for (int i = 0; i < count; i++) {
+            int start = DspKernels.symbolStart(i, period);
+            int end = DspKernels.symbolStart(i + 1, period);
+            float sum = 0;
+            for (int j = start; j < end; j++) {
+                sum += audio[j];
+            }
+            levels[i] = LEVEL_SCALE * sum / (end - start);
+        }
+    }
+
+    /**
+     * Mean level of each symbol of a Q15 signal, summed in int (a symbol of
+     * up to 65536 samples fits)
+     *
+     * @param audio  the filtered Q15 signal
+     * @param n      the number of samples
+     * @param period the number of samples by symbol, not necessarily an integer
+     * @param levels the level of each symbol, in the unit of the threshold
+     */
+    public static void symbolLevels(short[] audio, int n, double period, double[] levels) {
+        int count = DspKernels.symbolCount(n, period);
+        for (int i = 0; i < count; i++) {
+            int start = DspKernels.symbolStart(i, period);
+            int end = DspKernels.symbolStart(i + 1, period);
+            int sum = 0;
+            for (int j = start; j < end; j++) {
+                sum += audio[j];
+            }
+            levels[i] = LEVEL_SCALE / SCALE * sum / (end - start);
+        }
+    }
+
+    /**
+     * Copy a float signal to doubles, for the display
+     *
+     * @param audio the signal
+     * @param n     the number of samples
+     * @return the n samples as doubles
+     */
+    public static double[] toDouble(float[] audio, int n) {
+        double[] sig = new double[n];
+        for (int i = 0; i < n; i++) {
+            sig[i] = audio[i];
+        }
+        return sig;
+    }
+
+    /**
+     * Copy a Q15 signal to doubles between -1 and 1, for the display
+     *
+     * @param audio the Q15 signal
+     * @param n     the number of samples
+     * @return the n samples as doubles
+     */
+    public static double[] toDouble(short[] audio, int n) {
+        double[] sig = new double[n];
+        for (int i = 0; i < n; i++) {
+            sig[i] = audio[i] / SCALE;
+        }
+        return sig;
+    }
+
+    /**
+     * Accuracy check of the float and fixed-point variants against the double
+     * path: the same noisy message (or wav file) goes through the stages of
+     * DosRead, and the same bits through the modulation of DosSend, in the
+     * three precisions. Prints the largest error of each stage against the
+     * double path and exits with status 1 if a variant is out of tolerance.
+     * The noise is relative to the amplitude of the test message (0.2 by
+     * default); with a file it is relative to the full scale and none is
+     * added unless --noise is given.
+     * Usage: java DosDsp [file.wav] [--noise 0.2]
+     */
+    public static void main(String[] args) throws IOException {
+        String path = null;
+        double noise = -1; // --noise : écart type du bruit ajouté, -1 pour la valeur par défaut
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--noise") && i + 1 < args.length) {
+                noise = Double.parseDouble(args[++i]);
+                if (noise < 0) {
+                    System.out.println("Bruit négatif : " + noise);
+                    System.exit(1);
+                }
+            } else {
+                path = args[i];
+            }
+        }
+
+        // Signal de test en PCM 16 bits : le fichier, ou un message bruité
+        byte[] message = "Vérification des calculs en float et en virgule fixe".getBytes(StandardCharsets.UTF_8);
+        DosSend sender = new DosSend();
+        byte[] bits = sender.charToBits(sender.buildFrame(new String(message, StandardCharsets.UTF_8).toCharArray()));
+        byte[] pcm;
+        int sampleRate = sender.FECH;
+        if (path != null) {
+            DosRead header = new DosRead();
+            header.readWavHeader(path);
+            if (header.fileInputStream == null || header.bitsPerSample != 16) {
+                System.out.println("Fichier wav PCM 16 bits illisible : " + path);
+                System.exit(1);
+            }
+            pcm = header.dataSize == DosRead.UNKNOWN_SIZE ? header.fileInputStream.readAllBytes()
+                    : header.fileInputStream.readNBytes(header.dataSize);
+            sampleRate = header.sampleRate;
+            if (noise > 0) {
+                // Bruit ajouté aux échantillons du fichier, en fraction de la pleine échelle
+                Random random = new Random(1);
+                ByteBuffer buffer = ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = 0; i + 1 < pcm.length; i += 2) {
+                    double v = buffer.getShort(i) + noise * random.nextGaussian() * SCALE;
+                    buffer.putShort(i, (short) Math.max(-32768, Math.min(32767, Math.round(v))));
+                }
+            }
+        } else {
+            if (noise < 0) {
+                noise = 0.2; // bruit par défaut du message de test
+            }
+            sender.modulateData(bits);
+            Random random = new Random(1);
+            ByteBuffer buffer = ByteBuffer.allocate(2 * sender.dataLength).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < sender.dataLength; i++) {
+                double v = 0.5 * sender.dataMod[i] + noise * 0.5 * random.nextGaussian();
+                buffer.putShort((short) Math.max(-32768, Math.min(32767, Math.round(v * SCALE))));
+            }
+            sender.release();
+            pcm = buffer.array();
+        }
+
+        // Les trois chaînes de réception, étape par étape
+        String[] precisions = {DOUBLE, FLOAT, FIXED};
+        DosRead[] readers = new DosRead[precisions.length];
+        for (int k = 0; k < readers.length; k++) {
+            readers[k] = new DosRead();
+            readers[k].precision = precisions[k];
+            readers[k].sampleRate = sampleRate;
+            readers[k].format = DosRead.BINARY; // avertissements sur stderr seulement
+            readers[k].fileInputStream = new ByteArrayInputStream(pcm);
+            readers[k].dataSize = pcm.length;
+            readers[k].readAudioDouble();
+        }
+        int n = readers[0].samples;
+        if (n == 0) {
+            System.out.println("Aucun échantillon à comparer");
+            System.exit(1);
+        }
+        double period = (double) sampleRate / DosRead.BAUDS;
+        System.out.printf("Vérification sur %d échantillons (%d symboles) ; mémoire du signal : 8, 4 et 2 octets par échantillon%n",
+                n, DspKernels.symbolCount(n, period));
+        System.out.printf("%-20s %14s %14s%n", "Étape", "écart float", "écart fixe");
+        boolean ok = report("conversion", readers, 1e-7, 0);
+        for (DosRead reader : readers) {
+            reader.audioRectifier();
+        }
+        ok &= report("redressement", readers, 1e-7, 1.0 / SCALE);
+        for (DosRead reader : readers) {
+            reader.audioLPFilter(reader.lpWindow());
+        }
+        ok &= report("passe-bas", readers, 1e-6, 1.0 / SCALE);
+
+        // Niveaux des symboles dans l'unité du seuil, décisions et message
+        double[] levelErr = new double[readers.length];
+        int[] changed = new int[readers.length];
+        for (int k = 0; k < readers.length; k++) {
+            readers[k].audioResampleAndThreshold(period, DosRead.THRESHOLD);
+            readers[k].decodeBitsToChar();
+            for (int i = 0; i < readers[k].softBits.length; i++) {
+                levelErr[k] = Math.max(levelErr[k], Math.abs(readers[k].softBits[i] - readers[0].softBits[i]));
+                changed[k] += readers[k].outputBits[i] != readers[0].outputBits[i] ? 1 : 0;
+            }
+            readers[k].release();
+        }
+        System.out.printf(Locale.ROOT, "%-20s %14.3g %14.3g%n", "niveaux (/2^16)", levelErr[1], levelErr[2]);
+        System.out.printf("%-20s %14d %14d%n", "décisions changées", changed[1], changed[2]);
+        ok &= levelErr[1] < 0.1 && levelErr[2] < 2 && changed[1] == 0 && changed[2] == 0;
+        for (DosRead reader : readers) {
+            ok &= Arrays.equals(reader.decodedChars, readers[0].decodedChars);
+        }
+
+        // Modulation : écart en pas de quantification sur le PCM écrit dans le wav
+        short[][] written = new short[precisions.length][];
+        for (int k = 0; k < precisions.length; k++) {
+            DosSend s = new DosSend();
+            s.precision = precisions[k];
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            s.outStream = out;
+            s.modulateData(bits);
+            s.writeNormalizeWavData();
+            s.release();
+            written[k] = new short[out.size() / 2];
+            ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(written[k]);
+        }
+        int[] lsb = new int[precisions.length];
+        for (int k = 1; k < precisions.length; k++) {
+            for (int i = 0; i < written[0].length; i++) {
+                lsb[k] = Math.max(lsb[k], Math.abs(written[k][i] - written[0][i]));
+            }
+        }
+        System.out.printf("%-20s %14d %14d%n", "modulation (pas)", lsb[1], lsb[2]);
+        ok &= lsb[1] <= 1 && lsb[2] == 0;
+
+        System.out.println(ok ? "Variantes conformes au calcul en double" : "Écart hors tolérance");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Print the largest error of the float and fixed-point signals against
+     * the double one, as a fraction of the full scale
+     *
+     * @return true if both are within their tolerance
+     */
+    private static boolean report(String stage, DosRead[] readers, double floatTolerance, double fixedTolerance) {
+        double[] ref = readers[0].audio;
+        double fErr = 0, qErr = 0;
+        for (int i = 0; i < readers[0].samples; i++) {
+            fErr = Math.max(fErr, Math.abs(readers[1].audioFloat[i] - ref[i]));
+            qErr = Math.max(qErr, Math.abs(readers[2].audioFixed[i] / SCALE - ref[i]));
+        }
+        System.out.printf(Locale.ROOT, "%-20s %14.3g %14.3g%n", stage, fErr, qErr);
+        return fErr <= floatTolerance && qErr <= fixedTolerance;
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * In-process loopback between DosSend and the streaming demodulator of DosRead.
+ * The modulated signal goes through a simulated channel (attenuation, clock
+ * drift, delay and additive white gaussian noise) before being decoded, and
+ * each configuration reports its bit error rate and decoding throughput.
+ */
+public class DosLoop {
+
+    double attenuation = 1.0; // gain du canal (1 = pas d'atténuation)
+    double noise = 0.0; // écart type du bruit blanc gaussien (pleine échelle = 1)
+    double drift = 0.0; // dérive d'horloge du récepteur en ppm
+    int offset = 0; // retard du message en échantillons (silence avant le début)
+    long seed = 1; // graine du générateur de bruit, pour des essais reproductibles
+    double rolloff = 0; // transitions en cosinus surélevé de l'émetteur (DosSend.rolloff)
+
+    /**
+     * Result of one loopback run
+     */
+    public static class Result {
+        int bits; // nombre de bits de trame envoyés
+        int errors; // nombre de bits faux ou manquants
+        boolean decoded; // message reçu à l'identique
+        double samplesPerSecond; // débit de décodage
+        SignalQuality quality; // qualité des symboles reçus
+
+        /**
+         * @return the bit error rate
+         */
+        public double ber() {
+            return bits == 0 ? 0 : (double) errors / bits;
+        }
+    }
+
+    /**
+     * Pass a signal through the simulated channel
+     *
+     * @param signal the modulated signal, between -1 and 1
+     * @param tail   the number of silent samples added after the signal
+     * @return the received signal
+     */
+    public double[] transmit(double[] signal, int tail) {
+        return transmit(signal, signal.length, tail);
+    }
+
+    /**
+     * Pass the first samples of a signal through the simulated channel
+     *
+     * @param signal the modulated signal, between -1 and 1
+     * @param n      the number of samples of the signal to send
+     * @param tail   the number of silent samples added after the signal
+     * @return the received signal
+     */
+    public double[] transmit(double[] signal, int n, int tail) {
+        Random random = new Random(seed);
+        double ratio = 1.0 + drift * 1e-6; // pas de lecture du signal émis par échantillon reçu
+        int length = n < 2 ? n : (int) ((n - 1) / ratio);
+        double[] received = new double[offset + length + tail];
+
+        for (int k = 0; k < length; k++) {
+            // Interpolation linéaire entre les deux échantillons émis les plus proches
+            double t = k * ratio;
+            int i = (int) t;
+            double frac = t - i;
+            double v = i + 1 < n ? signal[i] * (1 - frac) + signal[i + 1] * frac : signal[i];
+            received[offset + k] = attenuation * v;
+        }
+        if (noise > 0) {
+            for (int k = 0; k < received.length; k++) {
+                received[k] += noise * random.nextGaussian();
+            }
+        }
+        return received;
+    }
+
+    /**
+     * Send a message through the loopback and decode it
+     *
+     * @param message   the message to send
+     * @param bauds     the symbol rate
+     * @param threshold the decision threshold, as a fraction of the full scale
+     * @return the result of the run
+     */
+    public Result run(String message, int bauds, double threshold) {
+        DosSend sender = new DosSend();
+        sender.BAUDS = bauds;
+        sender.rolloff = rolloff;
+        sender.dataChar = message.toCharArray();
+        byte[] sent = sender.charToBits(sender.buildFrame(sender.dataChar));
+        sender.modulateData(sent);
+
+        int period = sender.FECH / bauds;
+        double[] received = transmit(sender.dataMod, sender.dataLength, 2 * period);
+        sender.release();
+
+        // Bits et octets reçus pour la première trame
+        List<Integer> bits = new ArrayList<>();
+        List<Double> levels = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        boolean[] done = new boolean[1];
+        OokDemodulator demod = new OokDemodulator(sender.FECH, bauds, Math.min(DosRead.LP_FILTER, period / 4),
+                threshold, new OokDemodulator.Listener() {
+                    @Override
+                    public void onBit(int bit, double level) {
+                        if (!done[0]) {
+                            bits.add(bit);
+                            levels.add(level);
+                        }
+                    }
+
+                    @Override
+                    public void onByte(int value) {
+                        if (!done[0]) {
+                            bytes.write(value);
+                        }
+                    }
+
+                    @Override
+                    public void onFrameEnd(int flag, int length) {
+                        done[0] = true;
+                    }
+                });
+
+        long t0 = System.nanoTime();
+        demod.process(received, 0, received.length);
+        demod.flush();
+        long t1 = System.nanoTime();
+
+        Result result = new Result();
+        result.bits = sent.length;
+        for (int i = 0; i < sent.length; i++) {
+            // Les bits manquants comptent comme des erreurs
+            if (i >= bits.size() || bits.get(i) != sent[i]) {
+                result.errors++;
+            }
+        }
+        result.decoded = done[0] && Arrays.equals(bytes.toByteArray(), message.getBytes(StandardCharsets.UTF_8));
+        result.samplesPerSecond = received.length / ((t1 - t0) / 1e9);
+        double[] soft = new double[levels.size()];
+        for (int i = 0; i < soft.length; i++) {
+            soft[i] = levels.get(i);
+        }
+        result.quality = new SignalQuality(soft, threshold);
+        return result;
+    }
+
+    /**
+     * Parse a comma separated list of numbers
+     */
+    private static double[] parseList(String list) {
+        String[] parts = list.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * Sweep every combination of the given parameters and print one line per
+     * configuration.
+     * Usage: java DosLoop [--bauds 100,200] [--threshold 0.1,0.18]
+     * [--noise 0,0.2] [--attenuation 1,0.5] [--drift 0,500] [--offset 0,123]
+     * [--shape 0,0.5] [--message "text"]
+     */
+    public static void main(String[] args) {
+        double[] bauds = { 100, 150, 200, 300, 450 };
+        double[] thresholds = { 0.1, DosRead.THRESHOLD / 65536.0, 0.3, 0.5 };
+        double[] noises = { 0, 0.2, 0.5 };
+        double[] attenuations = { 1, 0.5 };
+        double[] drifts = { 0, 1000 };
+        double[] offsets = { 0, 123 };
+        double[] shapes = { 0 };
+        String message = "Hello World !";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--bauds": bauds = parseList(args[i + 1]); break;
+                case "--threshold": thresholds = parseList(args[i + 1]); break;
+                case "--noise": noises = parseList(args[i + 1]); break;
+                case "--attenuation": attenuations = parseList(args[i + 1]); break;
+                case "--drift": drifts = parseList(args[i + 1]); break;
+                case "--offset": offsets = parseList(args[i + 1]); break;
+                case "--shape": shapes = parseList(args[i + 1]); break;
+                case "--message": message = args[i + 1]; break;
+                default: System.out.println("Option inconnue : " + args[i]); return;
+            }
+        }
+
+        DosLoop loop = new DosLoop();
+        System.out.println("bauds\tforme\tseuil\tbruit\tgain\tdérive\tretard\tTEB\tRSB\tœil\tproches\tmessage\téch/s");
+        for (double b : bauds) {
+            for (double shape : shapes) {
+                for (double threshold : thresholds) {
+                    for (double n : noises) {
+                        for (double a : attenuations) {
+                            for (double d : drifts) {
+                                for (double o : offsets) {
+                                    loop.noise = n;
+                                    loop.attenuation = a;
+                                    loop.drift = d;
+                                    loop.offset = (int) o;
+                                    loop.rolloff = shape;
+                                    Result r = loop.run(message, (int) b, threshold);
+                                    System.out.printf("%d\t%.2f\t%.3f\t%.2f\t%.2f\t%.0f\t%d\t%.4f\t%.1f\t%.2f\t%d\t%s\t%.3g%n",
+                                            (int) b, shape, threshold, n, a, d, (int) o, r.ber(), r.quality.snrDb(),
+                                            r.quality.eyeOpening(), r.quality.nearThreshold, r.decoded ? "OK" : "ERREUR",
+                                            r.samplesPerSecond);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println(BufferPool.SHARED);
+    }
+}
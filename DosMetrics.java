@@ -0,0 +1,242 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registry of the timing of the processing stages of DosSend and DosRead.
+ * Each stage accumulates its number of calls, its time, the number of
+ * samples (or bits) it processed and the bytes allocated by its thread.
+ * The registry can be printed as JSON, or published through JMX so that
+ * jconsole or any JMX client can follow a long running process.
+ * <p>
+ * Nothing is measured until enable() or enableJmx() is called (--metrics,
+ * --jmx): start() then returns a timer that does nothing, without reading
+ * the clock nor the allocation counter of the thread.
+ */
+public class DosMetrics {
+
+    /**
+     * JMX view of a stage. The name must end with MXBean.
+     */
+    public interface StageMXBean {
+        String getName();
+
+        long getCalls();
+
+        double getSeconds();
+
+        long getSamples();
+
+        double getSamplesPerSecond();
+
+        long getAllocatedBytes();
+    }
+
+    /**
+     * Accumulated measures of a stage
+     */
+    public static class Stage implements StageMXBean {
+        private final String name;
+        private long calls;
+        private long nanos;
+        private long samples;
+        private long allocated;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(long nanos, long samples, long allocated) {
+            calls++;
+            this.nanos += nanos;
+            this.samples += samples;
+            this.allocated += allocated;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public synchronized long getCalls() {
+            return calls;
+        }
+
+        @Override
+        public synchronized double getSeconds() {
+            return nanos / 1e9;
+        }
+
+        @Override
+        public synchronized long getSamples() {
+            return samples;
+        }
+
+        @Override
+        public synchronized double getSamplesPerSecond() {
+            return nanos > 0 ? samples * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public synchronized long getAllocatedBytes() {
+            return allocated;
+        }
+    }
+
+    /**
+     * Measure of one call of a stage, started by DosMetrics.start
+     */
+    public static class Timer {
+        static final Timer NONE = new Timer(null); // mesures désactivées : ne fait rien
+
+        private final Stage stage; // null pour NONE
+        private final long t0; // instant du début
+        private final long alloc0; // octets alloués par le fil au début
+
+        private Timer(Stage stage) {
+            this.stage = stage;
+            this.alloc0 = stage == null ? 0 : allocatedBytes();
+            this.t0 = stage == null ? 0 : System.nanoTime();
+        }
+
+        /**
+         * End the measure and add it to its stage
+         *
+         * @param samples the number of samples (or bits) processed by the call
+         */
+        public void stop(long samples) {
+            if (stage == null) {
+                return;
+            }
+            long t1 = System.nanoTime();
+            long alloc = alloc0 < 0 ? 0 : allocatedBytes() - alloc0;
+            stage.add(t1 - t0, samples, alloc);
+        }
+    }
+
+    private static final Map<String, Stage> stages = new LinkedHashMap<>(); // étapes, dans l'ordre d'apparition
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static boolean jmx; // étapes publiées en JMX
+    private static volatile boolean enabled; // mesures demandées (--metrics ou --jmx)
+
+    /**
+     * Start measuring one call of a stage
+     *
+     * @param name the name of the stage
+     * @return the measure to stop at the end of the call, Timer.NONE if the
+     *         measures are not enabled
+     */
+    public static Timer start(String name) {
+        return enabled ? new Timer(stage(name)) : Timer.NONE;
+    }
+
+    /**
+     * Start measuring the stages (--metrics)
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Get a stage, creating it (and publishing it in JMX if enabled) on first use
+     *
+     * @param name the name of the stage
+     * @return the stage
+     */
+    public static synchronized Stage stage(String name) {
+        Stage stage = stages.get(name);
+        if (stage == null) {
+            stage = new Stage(name);
+            stages.put(name, stage);
+            if (jmx) {
+                register(stage);
+            }
+        }
+        return stage;
+    }
+
+    /**
+     * Start measuring the stages and publish them, current and future, in
+     * the platform MBean server under DosOok:type=Stage,name=&lt;stage&gt;
+     */
+    public static synchronized void enableJmx() {
+        enable();
+        if (!jmx) {
+            jmx = true;
+            for (Stage stage : stages.values()) {
+                register(stage);
+            }
+        }
+    }
+
+    private static void register(Stage stage) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("DosOok:type=Stage,name=" + ObjectName.quote(stage.getName()));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stage, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Publication JMX impossible : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forget all the measures
+     */
+    public static synchronized void reset() {
+        stages.clear();
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread, or -1 if the
+     *         JVM does not measure them
+     */
+    static long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * @return the measures of all the stages, and the counters of the
+     *         shared buffer pool, as a JSON object
+     */
+    public static String toJson() {
+        List<Stage> list;
+        synchronized (DosMetrics.class) {
+            list = new ArrayList<>(stages.values());
+        }
+        StringBuilder json = new StringBuilder("{\"stages\":[");
+        for (int i = 0; i < list.size(); i++) {
+            Stage s = list.get(i);
+            json.append(i > 0 ? ",\n  " : "\n  ");
+            json.append(String.format(Locale.ROOT,
+                    "{\"name\":\"%s\",\"calls\":%d,\"seconds\":%.6f,\"samples\":%d,\"samplesPerSecond\":%.1f,\"allocatedBytes\":%d}",
+                    s.getName(), s.getCalls(), s.getSeconds(), s.getSamples(), s.getSamplesPerSecond(),
+                    s.getAllocatedBytes()));
+        }
+        json.append("\n],\"pool\":{\"hits\":").append(BufferPool.SHARED.hits.get());
+        json.append(",\"misses\":").append(BufferPool.SHARED.misses.get()).append("}}");
+        return json.toString();
+    }
+
+    /**
+     * Print the measures as JSON
+     *
+     * @param out the stream to print in
+     */
+    public static void dump(PrintStream out) {
+        out.println(toJson());
+    }
+}
@@ -0,0 +1,258 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Signal drawing helpers shared by DosSend and DosRead.
+ * Long signals are reduced to a min/max envelope per pixel column before
+ * being drawn, so that the number of draw calls depends on the width of
+ * the canvas and not on the number of samples.
+ */
+public class DosPlot {
+
+    /**
+     * Switch to headless rendering: StdDraw then draws into its offscreen
+     * image without opening a window, and the plots are written with
+     * savePlot. Must be called before the first use of StdDraw.
+     */
+    public static void enableHeadless() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    /**
+     * Write the current plot to an image file (png, jpg, ...)
+     *
+     * @param filename the file to write, its extension gives the format
+     */
+    public static void savePlot(String filename) {
+        StdDraw.show(); // Recopie le tracé en cours, même en double tampon
+        StdDraw.save(filename);
+    }
+
+    /**
+     * Draw a range of a signal on the current StdDraw canvas, whose x scale
+     * must be set to [start, stop]
+     *
+     * @param sig     the signal to draw
+     * @param start   the first sample to draw
+     * @param stop    the last sample to draw (included)
+     * @param mode    "line" or "point"
+     * @param columns the width of the canvas in pixels
+     */
+    public static void drawSignal(double[] sig, int start, int stop, String mode, int columns) {
+        if (stop - start + 1 <= 2 * columns) {
+            // Peu d'échantillons : tracé direct
+            if (mode.equals("line")) {
+                StdDraw.polyline(sig, start, stop);
+            } else {
+                int n = stop - start + 1;
+                double[] x = new double[n];
+                double[] y = new double[n];
+                for (int i = 0; i < n; i++) {
+                    x[i] = start + i;
+                    y[i] = sig[start + i];
+                }
+                draw(x, y, mode);
+            }
+            return;
+        }
+        double[] min = new double[columns];
+        double[] max = new double[columns];
+        MinMaxPyramid.decimate(sig, start, stop, min, max);
+        drawEnvelope(min, max, start, stop, mode);
+    }
+
+    /**
+     * Colors of the successive signals of an overlay, in RGB. Neither
+     * StdDraw constants nor Color objects here: loading either class in the
+     * static initializer would open the display before enableHeadless()
+     * is called
+     */
+    static final int[] COLORS = { 0xFF0000, 0x095AA6, 0x008C00, 0xFFC800, 0xFF00FF, 0x00FFFF, 0x404040 };
+
+    /**
+     * @param k the index of a signal
+     * @return its color in an overlay
+     */
+    static Color color(int k) {
+        return new Color(COLORS[k % COLORS.length]);
+    }
+
+    /**
+     * Draw the same range of several signals, one color per signal, with a
+     * legend in the top left corner. Long ranges are decimated in a single
+     * shared pass over all the signals.
+     *
+     * @param sigs    the signals to draw
+     * @param labels  the legend of each signal
+     * @param start   the first sample to draw
+     * @param stop    the last sample to draw (included)
+     * @param mode    "line" or "point"
+     * @param columns the width of the canvas in pixels
+     */
+    public static void drawSignals(List<double[]> sigs, List<String> labels, int start, int stop, String mode, int columns) {
+        double[][] all = sigs.toArray(new double[0][]);
+        if (stop - start + 1 <= 2 * columns) {
+            for (int k = 0; k < all.length; k++) {
+                if (all[k].length > start) { // sinon signal trop court pour la plage affichée
+                    StdDraw.setPenColor(color(k));
+                    drawSignal(all[k], start, Math.min(stop, all[k].length - 1), mode, columns);
+                }
+            }
+        } else {
+            double[][] min = new double[all.length][columns];
+            double[][] max = new double[all.length][columns];
+            MinMaxPyramid.decimate(all, start, stop, min, max);
+            for (int k = 0; k < all.length; k++) {
+                StdDraw.setPenColor(color(k));
+                drawEnvelope(min[k], max[k], start, stop, mode);
+            }
+        }
+        drawLegend(labels, start, stop);
+    }
+
+    /**
+     * Draw the legend of an overlay in the top left corner, the y scale
+     * being [-1.1, 1.1]
+     *
+     * @param labels the legend of each signal
+     * @param start  the first sample of the x scale
+     * @param stop   the last sample of the x scale
+     */
+    public static void drawLegend(List<String> labels, int start, int stop) {
+        double w = stop - start;
+        for (int k = 0; k < labels.size(); k++) {
+            double y = 1.0 - k * 0.1;
+            StdDraw.setPenColor(color(k));
+            StdDraw.line(start + 0.02 * w, y, start + 0.06 * w, y); // Échantillon de couleur
+            StdDraw.setPenColor(StdDraw.BLACK);
+            StdDraw.textLeft(start + 0.07 * w, y, labels.get(k));
+        }
+    }
+
+    /**
+     * Draw a range of a signal from its cached min/max pyramid
+     *
+     * @param pyramid the pyramid of the signal to draw
+     * @param start   the first sample to draw
+     * @param stop    the last sample to draw (included)
+     * @param mode    "line" or "point"
+     * @param columns the width of the canvas in pixels
+     */
+    public static void drawSignal(MinMaxPyramid pyramid, int start, int stop, String mode, int columns) {
+        if (stop - start + 1 <= 2 * columns) {
+            // Peu d'échantillons : seuls ceux de la plage sont lus
+            double[] y = new double[stop - start + 1];
+            pyramid.read(start, y);
+            double[] x = new double[y.length];
+            for (int i = 0; i < x.length; i++) {
+                x[i] = start + i;
+            }
+            draw(x, y, mode);
+            return;
+        }
+        double[] min = new double[columns];
+        double[] max = new double[columns];
+        pyramid.envelope(start, stop, min, max);
+        drawEnvelope(min, max, start, stop, mode);
+    }
+
+    /**
+     * Draw a min/max envelope, one column per pixel.
+     * In "line" mode the envelope is drawn as one polygon going along the
+     * maxima and back along the minima, filled and outlined so that the
+     * columns where min and max are equal stay visible. This is much cheaper
+     * to render than a path going up and down every column.
+     *
+     * @param min   the minimum of each column
+     * @param max   the maximum of each column
+     * @param start the first sample of the range
+     * @param stop  the last sample of the range (included)
+     * @param mode  "line" or "point"
+     */
+    public static void drawEnvelope(double[] min, double[] max, int start, int stop, String mode) {
+        int columns = min.length;
+        while (columns > 0 && min[columns - 1] > max[columns - 1]) {
+            columns--; // colonnes vides après la fin d'un signal plus court
+        }
+        if (columns == 0) {
+            return;
+        }
+        double width = (double) (stop - start + 1) / min.length; // échantillons par colonne
+        double[] x = new double[2 * columns];
+        double[] y = new double[2 * columns];
+        for (int c = 0; c < columns; c++) {
+            double xc = start + (c + 0.5) * width;
+            x[c] = xc; // aller le long des maxima
+            y[c] = max[c];
+            x[2 * columns - 1 - c] = xc; // retour le long des minima
+            y[2 * columns - 1 - c] = min[c];
+        }
+        if (mode.equals("line")) {
+            StdDraw.filledPolygon(x, y);
+            StdDraw.polygon(x, y);
+        } else {
+            draw(x, y, mode);
+        }
+    }
+
+    /**
+     * Draw a spectrogram as an image filling a rectangle of the current scale.
+     * The colors go from black (range dB below the maximum, or less) through
+     * blue and red to yellow (maximum).
+     *
+     * @param db    the power in dB, indexed by [column][bin]
+     * @param xmin  the left side of the picture
+     * @param xmax  the right side of the picture
+     * @param ymin  the bottom of the picture (first bin)
+     * @param ymax  the top of the picture (last bin)
+     * @param range the dynamic range shown, in dB
+     */
+    public static void drawSpectrogram(float[][] db, double xmin, double xmax, double ymin, double ymax, double range) {
+        int columns = db.length;
+        int bins = db[0].length;
+        float top = Float.NEGATIVE_INFINITY;
+        for (float[] column : db) {
+            for (float v : column) {
+                top = Math.max(top, v);
+            }
+        }
+
+        BufferedImage image = new BufferedImage(columns, bins, BufferedImage.TYPE_INT_RGB);
+        for (int c = 0; c < columns; c++) {
+            for (int k = 0; k < bins; k++) {
+                double t = Math.max(0, Math.min(1, 1 + (db[c][k] - top) / range)); // 0 (fond) à 1 (maximum)
+                image.setRGB(c, bins - 1 - k, heat(t)); // Fréquences basses en bas
+            }
+        }
+        StdDraw.picture((xmin + xmax) / 2, (ymin + ymax) / 2, image, xmax - xmin, ymax - ymin);
+    }
+
+    /**
+     * Color map of the spectrogram: black, blue, red, yellow
+     *
+     * @param t the intensity, between 0 and 1
+     * @return the RGB color
+     */
+    private static int heat(double t) {
+        int r = (int) (255 * Math.max(0, Math.min(1, 2 * t - 0.5)));
+        int g = (int) (255 * Math.max(0, Math.min(1, 3 * t - 2)));
+        int b = (int) (255 * Math.max(0, Math.min(1, 2 * t) - Math.max(0, 3 * t - 1.5)));
+        return (r << 16) | (g << 8) | Math.max(0, b);
+    }
+
+    /**
+     * Draw a list of points as a single polyline or as separate points
+     */
+    private static void draw(double[] x, double[] y, String mode) {
+        if (mode.equals("line")) {
+            StdDraw.polyline(x, y); // Un seul tracé et un seul rafraîchissement
+        } else if (mode.equals("point")) {
+            for (int i = 0; i < x.length; i++) {
+                StdDraw.point(x[i], y[i]); // Affichage des points du signal
+            }
+        } else {
+            System.out.println("Mode non pris en charge"); // Affichage d'un message si le mode n'est pas reconnu
+        }
+    }
+}
@@ -1,35 +1,106 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 public class DosRead {
     static final int FP = 1000; // Fréquence de la porteuse
     static final int BAUDS = 100; // Débit en symboles par seconde
     static final int[] START_SEQ = {1, 0, 1, 0, 1, 0, 1, 0}; // Séquence de synchro au début
-    FileInputStream fileInputStream; // Flux d'entrée du fichier
+    static final int FLAG_RAW = 0; // Charge utile transmise telle quelle
+    static final int FLAG_DEFLATE = 1; // Charge utile compressée en DEFLATE
+    static final int FRAME_HEADER = 3; // Drapeau + longueur sur 2 octets
+    static final int MAX_INFLATED = 1 << 20; // Taille max d'un message décompressé (1 Mio)
+    static final int LP_FILTER = 44; // Taille de la moyenne mobile du filtre passe-bas
+    static final int THRESHOLD = 12000; // Seuil séparant les 0 et les 1
+    static final int LIVE_BLOCK = 512; // Échantillons lus par bloc en réception directe
+    static final int UNKNOWN_SIZE = -1; // Taille de données inconnue (wav diffusé en flux)
+    static final int OUT_BUFFER = 1 << 16; // Taille du tampon de la sortie standard
+    static final String TEXT = "text"; // Sortie lisible
+    static final String JSON = "json"; // Sortie en lignes JSON, une par résultat
+    static final String BINARY = "bin"; // Sortie des seuls octets du message
+    static final DspKernels KERNELS = DspKernels.select(); // Boucles du calcul en double, vectorielles selon -Ddosook.simd
+
+    /**
+     * Buffered standard output shared by all the instances, flushed when
+     * the JVM exits so that nothing written by an instance is lost
+     */
+    static final PrintStream STDOUT = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUT_BUFFER), false, StandardCharsets.UTF_8);
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(STDOUT::flush));
+    }
+
+    InputStream fileInputStream; // Flux d'entrée du fichier (ou de l'entrée standard)
     int sampleRate = 44100; // Fréquence d'échantillonnage
     int bitsPerSample; // Nombre de bits par échantillon
-    int dataSize; // Taille des données audio
-    double[] audio; // Tableau de données audio en double
+    int dataSize; // Taille des données audio, UNKNOWN_SIZE si elle n'est pas connue
+    double[] audio; // Tableau de données audio en double (tableau du pool, souvent plus long que samples)
+    int samples; // Nombre d'échantillons utiles dans audio
+    String precision = DosDsp.DOUBLE; // Précision des calculs : DosDsp.DOUBLE, FLOAT ou FIXED
+    float[] audioFloat; // Signal en float, à la place de audio en précision FLOAT
+    short[] audioFixed; // Signal en virgule fixe Q15, à la place de audio en précision FIXED
+    int decimation = 1; // Facteur de décimation appliqué à audio (1 sans audioMixAndDecimate)
+    BufferPool pool = BufferPool.SHARED; // Tampons réutilisés d'un message à l'autre
     int[] outputBits; // Tableau des bits de sortie
+    double[] softBits; // Niveau moyen de chaque symbole, avant la décision
+    int threshold; // Seuil utilisé pour la décision
+    int frameStart; // Premier symbole de la trame décodée (début de START_SEQ)
+    int frameEnd; // Symbole suivant la fin de la trame décodée
+    String format = TEXT; // Format de sortie : TEXT, JSON ou BINARY
+    boolean verbose; // Affiche aussi les bits et les caractères décodés
+    PrintStream out = STDOUT; // Toutes les sorties passent par ce tampon unique
     char[] decodedChars; // Tableau des caractères décodés
 
     /**
      * Constructor that opens the FIlEInputStream
      * and reads sampleRate, bitsPerSample and dataSize
-     * from the header of the wav file
+     * from the header of the wav file.
+     * The chunks are read in order until the data chunk, so the stream is
+     * read only once and can be stdin. A data size of 0 or 0xFFFFFFFF
+     * (streamed wav, or RF64 file beyond 4 GB) is reported as UNKNOWN_SIZE.
      *
-     * @param path the path of the wav file to read
+     * @param path the path of the wav file to read, or "-" for stdin
      */
     public void readWavHeader(String path) {
-        byte[] header = new byte[44]; // The header is 44 bytes long
         try {
-            fileInputStream = new FileInputStream(path);
-            fileInputStream.read(header);
-
-            // Récupération des informations du header
-            sampleRate = byteArrayToInt(header, 24, 32);
-            bitsPerSample = byteArrayToInt(header, 34, 16);
-            dataSize = byteArrayToInt(header, 40, 32);
+            fileInputStream = new BufferedInputStream(path.equals("-") ? System.in : new FileInputStream(path));
+            byte[] riff = fileInputStream.readNBytes(12); // "RIFF" (ou "RF64"), taille, "WAVE"
+            String magic = new String(riff, 0, Math.min(4, riff.length), StandardCharsets.US_ASCII);
+            if (riff.length < 12 || !(magic.equals("RIFF") || magic.equals("RF64"))
+                    || !new String(riff, 8, 4, StandardCharsets.US_ASCII).equals("WAVE")) {
+                warn("Fichier wav invalide : " + path);
+                return;
+            }
 
+            // Parcours des blocs jusqu'au bloc de données
+            byte[] chunk = new byte[8];
+            while (fileInputStream.readNBytes(chunk, 0, 8) == 8) {
+                String id = new String(chunk, 0, 4, StandardCharsets.US_ASCII);
+                int size = byteArrayToInt(chunk, 4, 32);
+                if (id.equals("data")) {
+                    dataSize = size <= 0 ? UNKNOWN_SIZE : size;
+                    return;
+                }
+                byte[] content = fileInputStream.readNBytes(size + (size & 1)); // Blocs alignés sur 2 octets
+                if (id.equals("fmt ") && content.length >= 16) {
+                    // Récupération des informations du header
+                    sampleRate = byteArrayToInt(content, 4, 32);
+                    bitsPerSample = byteArrayToInt(content, 14, 16);
+                }
+            }
+            warn("Bloc de données introuvable : " + path);
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (IOException e) {
@@ -59,36 +130,91 @@ public class DosRead {
      * Read the audio data from the wav file
      * and convert it to an array of doubles
      * that becomes the audio attribute
+     * (audioFloat or audioFixed with the FLOAT or FIXED precision)
      */
     public void readAudioDouble() {
-        byte[] audioData = new byte[dataSize];
+        DosMetrics.Timer timer = DosMetrics.start("readAudioDouble");
+        ByteBuffer audioData = ByteBuffer.allocate(0);
 
         try {
-            fileInputStream.read(audioData); // Lecture des données audio
+            if (dataSize == UNKNOWN_SIZE) {
+                // Taille inconnue : lecture jusqu'à la fin du flux
+                audioData = ByteBuffer.wrap(fileInputStream.readAllBytes()).order(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                // Taille connue : lecture dans un tampon du pool
+                audioData = pool.acquireBytes(dataSize);
+                ReadableByteChannel channel = Channels.newChannel(fileInputStream);
+                int n;
+                do {
+                    n = channel.read(audioData); // jusqu'à dataSize octets ou la fin du fichier
+                } while (n >= 0 && audioData.hasRemaining());
+                audioData.flip();
+            }
         } catch (IOException e) {
             e.printStackTrace(); // Affiche les erreurs d'entrée/sortie
         }
+        dataSize = audioData.remaining() & ~1; // Taille réellement lue
 
-        audio = new double[dataSize / 2]; // Initialisation du tableau audio
-
+        release(); // Rend le signal du message précédent
+        samples = dataSize / 2;
         bitsPerSample = 16; // Bits par échantillon
 
-        for (int i = 0; i < dataSize / 2; i++) {
-            int sample = (audioData[2 * i + 1] << 8) | (audioData[2 * i] & 0xFF); // Conversion little-endian
-            audio[i] = sample / 32768.0; // Normalisation entre -1 et 1
+        if (precision.equals(DosDsp.FLOAT)) {
+            audioFloat = pool.acquireFloats(samples);
+            DosDsp.toFloat(audioData, audioFloat, samples);
+        } else if (precision.equals(DosDsp.FIXED)) {
+            audioFixed = pool.acquireShorts(samples);
+            DosDsp.toFixed(audioData, audioFixed, samples);
+        } else {
+            audio = pool.acquireDoubles(samples); // Initialisation du tableau audio
+            KERNELS.toDouble(audioData, audio, samples); // Conversion little-endian et normalisation entre -1 et 1
         }
+        pool.release(audioData);
+        timer.stop(samples);
+    }
+
+    /**
+     * Give the audio array back to the pool, once the message is decoded
+     * and the signal is not needed any more
+     */
+    public void release() {
+        pool.release(audio);
+        pool.release(audioFloat);
+        pool.release(audioFixed);
+        audio = null;
+        audioFloat = null;
+        audioFixed = null;
+        samples = 0;
+        decimation = 1;
     }
 
 
+    /**
+     * @return the current signal as doubles (a copy for the FLOAT and FIXED
+     *         precisions), for the display
+     */
+    public double[] signal() {
+        if (precision.equals(DosDsp.FLOAT)) {
+            return DosDsp.toDouble(audioFloat, samples);
+        } else if (precision.equals(DosDsp.FIXED)) {
+            return DosDsp.toDouble(audioFixed, samples);
+        }
+        return audio;
+    }
+
     /**
      * Reverse the negative values of the audio array
      */
     public void audioRectifier() {
-        for (int i = 0; i < audio.length; i++) {
-            if (audio[i] < 0) {
-                audio[i] = -audio[i]; // Inversion des valeurs négatives
-            }
+        DosMetrics.Timer timer = DosMetrics.start("audioRectifier");
+        if (precision.equals(DosDsp.FLOAT)) {
+            DosDsp.rectify(audioFloat, samples);
+        } else if (precision.equals(DosDsp.FIXED)) {
+            DosDsp.rectify(audioFixed, samples);
+        } else {
+            KERNELS.rectify(audio, samples); // Inversion des valeurs négatives
         }
+        timer.stop(samples);
     }
 
     /**
@@ -98,59 +224,138 @@ public class DosRead {
      * @param n the number of samples to average
      */
     public void audioLPFilter(int n) {
-        double[] filteredAudio = new double[audio.length]; // Tableau pour stocker les échantillons audio filtrés
+        DosMetrics.Timer timer = DosMetrics.start("audioLPFilter");
+        if (precision.equals(DosDsp.FLOAT)) {
+            float[] filtered = pool.acquireFloats(samples);
+            DosDsp.lowPass(audioFloat, filtered, samples, n);
+            pool.release(audioFloat);
+            audioFloat = filtered;
+        } else if (precision.equals(DosDsp.FIXED)) {
+            short[] filtered = pool.acquireShorts(samples);
+            DosDsp.lowPass(audioFixed, filtered, samples, n);
+            pool.release(audioFixed);
+            audioFixed = filtered;
+        } else {
+            double[] filteredAudio = pool.acquireDoubles(samples); // Tableau pour stocker les échantillons audio filtrés
 
-        // Applique un filtre passe-bas (moyenne mobile)
-        for (int i = 0; i < audio.length; i++) { // Parcourt les échantillons audio
-            double sum = 0.0; // Initialise la somme pour calculer la moyenne
-            int start = Math.max(0, i - n + 1); // Calcul de l'indice de début de la fenêtre
-            int end = i + 1; // Calcul de l'indice de fin de la fenêtre
+            // Applique un filtre passe-bas (moyenne mobile)
+            KERNELS.movingAverage(audio, filteredAudio, samples, n);
 
-            for (int j = start; j < end; j++) { // Boucle dans la fenêtre
-                sum += audio[j]; // Somme des échantillons dans la fenêtre
-            }
+            pool.release(audio); // Le signal non filtré n'est plus utile
+            audio = filteredAudio; // Met à jour le tableau audio avec les valeurs filtrées
+        }
+        timer.stop(samples);
+    }
+
+    /**
+     * Replace the audio array by the envelope of the carrier at a lower
+     * rate, in place of the rectifier and the low pass filter.
+     * The signal is mixed with the carrier (cosine and sine, table of one
+     * exact number of carrier periods), then each block of factor samples
+     * is summed and kept as one sample (integrate and dump: a first order
+     * CIC decimator). The envelope is the modulus of the two sums, scaled by
+     * 4 / PI so that a carrier gives the level of the rectified and filtered
+     * signal and THRESHOLD stays the same. The next stages then process
+     * factor times fewer samples.
+     *
+     * @param factor the decimation factor, at most about sampleRate / (2 FP)
+     *               so that a block does not cover more than one period of
+     *               the mixing product at 2 FP
+     */
+    public void audioMixAndDecimate(int factor) {
+        DosMetrics.Timer timer = DosMetrics.start("audioMixAndDecimate");
+        int input = samples;
+
+        // Table du cos et du sin de la porteuse sur un nombre entier de périodes
+        int tableSize = sampleRate / gcd(sampleRate, FP);
+        double[] cos = new double[tableSize];
+        double[] sin = new double[tableSize];
+        for (int k = 0; k < tableSize; k++) {
+            cos[k] = Math.cos(2 * Math.PI * FP * k / sampleRate);
+            sin[k] = Math.sin(2 * Math.PI * FP * k / sampleRate);
+        }
 
-            filteredAudio[i] = sum / (double) (end - start); // Calcul de la moyenne et stockage dans le tableau filtré
+        // Mélange et intégration par blocs, le résultat est écrit au début de audio
+        int outputs = (samples + factor - 1) / factor; // dernier bloc éventuellement incomplet
+        int k = 0; // position dans la table
+        for (int o = 0; o < outputs; o++) {
+            double i = 0, q = 0;
+            int start = o * factor;
+            int end = Math.min(start + factor, samples);
+            for (int j = start; j < end; j++) {
+                i += audio[j] * cos[k];
+                q += audio[j] * sin[k];
+                k = k + 1 == tableSize ? 0 : k + 1;
+            }
+            audio[o] = 4 / Math.PI * Math.sqrt(i * i + q * q) / (end - start);
         }
+        samples = outputs;
+        decimation = factor;
+        timer.stop(input);
+    }
 
-        audio = filteredAudio; // Met à jour le tableau audio avec les valeurs filtrées
+    /**
+     * @return the greatest common divisor of a and b
+     */
+    static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * @return the decimation factor for audioMixAndDecimate: blocks of about
+     *         half a carrier period, so that the product at 2 FP is averaged out
+     */
+    public int decimationFactor() {
+        return Math.max(1, (int) Math.round(sampleRate / (2.0 * FP)));
+    }
+
+    /**
+     * @return the size of the moving average of the low pass filter at the
+     *         sample rate of the file: LP_FILTER at 44100 Hz, the same
+     *         duration (about one carrier period) at the other rates
+     */
+    public int lpWindow() {
+        return Math.max(1, (int) Math.round(LP_FILTER * sampleRate / 44100.0));
     }
 
     /**
      * Resample the audio array and apply a threshold
      *
-     * @param period    the number of audio samples by symbol
+     * @param period    the number of audio samples by symbol, not necessarily
+     *                  an integer (sampleRate / BAUDS)
      * @param threshold the threshold that separates 0 and 1
      */
-    public void audioResampleAndThreshold(int period, int threshold) {
-        int numSymbols = audio.length / period; // Calcule le nombre de symboles
+    public void audioResampleAndThreshold(double period, int threshold) {
+        DosMetrics.Timer timer = DosMetrics.start("audioResampleAndThreshold");
+        int numSymbols = DspKernels.symbolCount(samples, period); // Calcule le nombre de symboles
         outputBits = new int[numSymbols]; // Tableau pour stocker les bits de sortie
+        softBits = new double[numSymbols];
+        this.threshold = threshold;
 
-        for (int i = 0; i < numSymbols; i++) { // Parcourt les symboles
-            int start = i * period; // Début de la période
-            int end = start + period; // Fin de la période
-
-            // Calcul de la somme des échantillons dans la période
-            double sum = 0;
-            for (int j = start; j < end; j++) { // Parcourt les échantillons
-                sum += audio[j]; // Somme des échantillons
-            }
+        if (precision.equals(DosDsp.FLOAT)) {
+            DosDsp.symbolLevels(audioFloat, samples, period, softBits);
+        } else if (precision.equals(DosDsp.FIXED)) {
+            DosDsp.symbolLevels(audioFixed, samples, period, softBits);
+        } else {
+            // Calcul de la moyenne des échantillons de chaque période
+            KERNELS.symbolMeans(audio, samples, period, softBits);
 
             int MAX_AMP = (int) Math.pow(2, bitsPerSample); // Calcul de l'amplitude maximale
 
-            // Calcul de la moyenne avec la plage d'amplitude
-            double average = MAX_AMP * (sum / period);
-
-            // Applique le seuillage
-            outputBits[i] = (average > threshold) ? 1 : 0; // Stocke le résultat binaire
+            // Moyenne ramenée à la plage d'amplitude, gardée pour le rapport de qualité
+            for (int i = 0; i < numSymbols; i++) {
+                softBits[i] = MAX_AMP * softBits[i];
+            }
         }
 
-        // Affiche le tableau outputBits dans le terminal
-        System.out.print("outputBits: ");
-        for (int i = 0; i < outputBits.length; i++) { // Parcourt les bits de sortie
-            System.out.print(outputBits[i] + " "); // Affiche chaque bit
+        // Applique le seuillage, le même pour toutes les précisions
+        for (int i = 0; i < numSymbols; i++) {
+            outputBits[i] = (softBits[i] > threshold) ? 1 : 0; // Stocke le résultat binaire
+        }
+        timer.stop(samples);
+        if (verbose) {
+            printBits(); // Hors de la boucle de calcul, en une seule écriture
         }
-        System.out.println(); // Nouvelle ligne pour la lisibilité
     }
 
 
@@ -158,10 +363,24 @@ public class DosRead {
      * Decode the outputBits array to a char array
      * The decoding is done by comparing the START_SEQ with the actual beginning of
      * outputBits.
-     * The next first symbol is the first bit of the first char.
+     * The next symbols form the frame sent by DosSend : one flag byte, the
+     * payload length on two bytes and the payload, each byte most significant
+     * bit first. The payload is inflated when the flag says it is compressed.
      */
     public void decodeBitsToChar() {
+        DosMetrics.Timer timer = DosMetrics.start("decodeBitsToChar");
+        decodeFrame();
+        timer.stop(outputBits.length);
+    }
+
+    /**
+     * Find the START_SEQ in outputBits, then read the frame that follows it
+     * into decodedChars
+     */
+    private void decodeFrame() {
         int startSeqIndex = -1; // Index de la séquence de début
+        frameStart = 0;
+        frameEnd = outputBits.length; // Sans trame, le rapport porte sur tous les symboles
 
         // Recherche de la séquence de début dans le tableau outputBits
         for (int i = 0; i < outputBits.length - START_SEQ.length; i++) {
@@ -179,40 +398,304 @@ public class DosRead {
         }
 
         if (startSeqIndex == -1) {
-            System.out.println("Séquence de début non trouvée dans le message.");
+            warn("Séquence de début non trouvée dans le message.");
             return;
         }
 
-        // Calcul du nombre de symboles dans le message (8 bits par caractère)
-        int numMessageSymbols = (outputBits.length - startSeqIndex) / 8;
+        // Lecture de l'entête de trame
+        if ((outputBits.length - startSeqIndex) / 8 < FRAME_HEADER) {
+            warn("Entête de trame incomplet.");
+            return;
+        }
+        int flag = readByte(startSeqIndex);
+        int length = (readByte(startSeqIndex + 8) << 8) | readByte(startSeqIndex + 16);
+        int payloadIndex = startSeqIndex + FRAME_HEADER * 8;
+
+        // Calcul du nombre d'octets disponibles (8 bits par octet)
+        int available = (outputBits.length - payloadIndex) / 8;
+        if (length > available) {
+            warn("Charge utile tronquée : " + available + " octets sur " + length);
+            length = available;
+        }
 
-        // Initialisation du tableau decodedChars pour stocker les caractères décodés
-        decodedChars = new char[numMessageSymbols];
+        frameStart = startSeqIndex - START_SEQ.length;
+        frameEnd = payloadIndex + length * 8;
 
-        // Décodage des bits en utilisant la stratégie de rééchantillonnage
-        for (int i = 0; i < numMessageSymbols; i++) {
-            int start = startSeqIndex + i * 8;
-            int end = start + 8;
+        // Décodage des octets de la charge utile
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) readByte(payloadIndex + i * 8);
+        }
 
-            // Conversion des 8 bits en un entier (traitement des bits à l'envers)
-            int decodedValue = 0;
-            for (int j = end - 1; j >= start; j--) {
-                decodedValue = (decodedValue << 1) | outputBits[j];
+        if (flag == FLAG_DEFLATE) {
+            try {
+                payload = decompressData(payload);
+            } catch (DataFormatException e) {
+                warn("Charge utile compressée invalide : " + e.getMessage());
+                return;
             }
-
-            // Conversion de l'entier en caractère ASCII
-            decodedChars[i] = (char) decodedValue;
+        } else if (flag != FLAG_RAW) {
+            warn("Drapeau de trame inconnu : " + flag);
+            return;
         }
 
+        // Initialisation du tableau decodedChars avec le message en UTF-8
+        decodedChars = new String(payload, StandardCharsets.UTF_8).toCharArray();
+
         // Affichage des caractères décodés pour inspection
-        System.out.print("Caractères décodés: ");
-        for (char c : decodedChars) {
-            System.out.print(c);
+        if (verbose && format.equals(TEXT)) {
+            out.println("Caractères décodés: " + new String(decodedChars));
         }
-        System.out.println(); // Nouvelle ligne pour la lisibilité
     }
 
+    /**
+     * Build the quality report of the symbols of the decoded frame (or of all
+     * the symbols when no frame was found)
+     *
+     * @return the report, with the soft values in the unit of the threshold
+     */
+    public SignalQuality qualityReport() {
+        return new SignalQuality(Arrays.copyOfRange(softBits, frameStart, frameEnd), threshold);
+    }
+
+    /**
+     * Read 8 bits of outputBits as one byte, most significant bit first
+     * (the order used by DosSend.charToBits)
+     *
+     * @param start the index of the first bit
+     * @return the byte value (0-255)
+     */
+    private int readByte(int start) {
+        int value = 0;
+        for (int j = start; j < start + 8; j++) {
+            value = (value << 1) | outputBits[j];
+        }
+        return value;
+    }
 
+    /**
+     * Inflate a raw DEFLATE payload (no zlib header nor checksum). The
+     * output is limited to MAX_INFLATED bytes, so that a corrupt or hostile
+     * frame cannot fill the memory.
+     *
+     * @param data the compressed bytes
+     * @return the decompressed bytes
+     * @throws DataFormatException if the data is not a valid DEFLATE stream
+     *                             or inflates beyond MAX_INFLATED bytes
+     */
+    public static byte[] decompressData(byte[] data) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        try {
+            // Octet factice requis par zlib en mode "nowrap"
+            byte[] input = new byte[data.length + 1];
+            System.arraycopy(data, 0, input, 0, data.length);
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[512];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("flux DEFLATE incomplet");
+                }
+                if (out.size() + n > MAX_INFLATED) {
+                    throw new DataFormatException("message décompressé de plus de " + MAX_INFLATED + " octets");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end(); // libère l'état natif de zlib, même sur une trame corrompue
+        }
+    }
+
+    /**
+     * Decode a live stream of raw PCM (16 bits signed, little endian, mono)
+     * with the streaming demodulator, printing each character as soon as
+     * its last symbol is received. Returns at the end of the stream.
+     *
+     * @param in        the raw PCM stream
+     * @param threshold the threshold that separates 0 and 1
+     */
+    public void decodeLive(InputStream in, int threshold) {
+        decodeLive(in, threshold, false);
+    }
+
+    /**
+     * Decode a raw PCM stream on the fly, optionally with a live display of
+     * the filtered envelope, the threshold and the decided bits
+     *
+     * @param in        the raw PCM stream (16 bits, little-endian, mono)
+     * @param threshold the decision threshold
+     * @param showScope true to open the live oscilloscope
+     */
+    public void decodeLive(InputStream in, int threshold, boolean showScope) {
+        PrintStream out = System.out;
+        double level = threshold / Math.pow(2, bitsPerSample);
+        OokDemodulator.Listener printer = new OokDemodulator.Listener() {
+            @Override
+            public void onByte(int value) {
+                out.write(value); // Octets UTF-8 transmis tels quels au terminal
+                out.flush();
+            }
+
+            @Override
+            public void onFrameEnd(int flag, int length) {
+                out.println();
+            }
+        };
+        DosScope scope = null;
+        if (showScope && StdDraw.isHeadless()) {
+            System.err.println("Pas d'affichage disponible : oscilloscope désactivé");
+        } else if (showScope) {
+            scope = new DosScope(printer, sampleRate, BAUDS, level);
+            scope.start();
+        }
+        OokDemodulator demod = new OokDemodulator(sampleRate, BAUDS, lpWindow(), level,
+                scope != null ? scope : printer);
+
+        byte[] block = new byte[LIVE_BLOCK * 2];
+        double[] samples = new double[LIVE_BLOCK];
+        int pending = 0; // octet impair en attente du bloc suivant
+        try {
+            int n;
+            while ((n = in.read(block, pending, block.length - pending)) != -1) {
+                n += pending;
+                int count = n / 2;
+                for (int i = 0; i < count; i++) {
+                    int sample = (block[2 * i + 1] << 8) | (block[2 * i] & 0xFF); // Conversion little-endian
+                    samples[i] = sample / 32768.0; // Normalisation entre -1 et 1
+                }
+                DosMetrics.Timer timer = DosMetrics.start("demodulate");
+                demod.process(samples, 0, count);
+                timer.stop(count);
+                pending = n - 2 * count;
+                if (pending == 1) {
+                    block[0] = block[n - 1];
+                }
+            }
+            demod.flush(); // Termine le dernier symbole reçu
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (scope != null) {
+            scope.stop();
+        }
+    }
+
+    /**
+     * Open the default audio input (microphone or line-in) as a raw PCM stream
+     * at sampleRate, 16 bits, mono
+     *
+     * @return the audio stream
+     * @throws LineUnavailableException if no audio input is available
+     */
+    public AudioInputStream openLiveInput() throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, false);
+        TargetDataLine line = AudioSystem.getTargetDataLine(format);
+        line.open(format, LIVE_BLOCK * 2 * 4); // Petit tampon pour limiter la latence
+        line.start();
+        return new AudioInputStream(line);
+    }
+
+    /**
+     * Print the decoded bits on one line: "outputBits: 0 1 ..." in TEXT
+     * format, {"type":"bits","bits":"01..."} in JSON format
+     */
+    void printBits() {
+        StringBuilder line = new StringBuilder(outputBits.length * 2 + 32);
+        if (format.equals(TEXT)) {
+            line.append("outputBits: ");
+            for (int bit : outputBits) {
+                line.append(bit).append(' ');
+            }
+        } else if (format.equals(JSON)) {
+            line.append("{\"type\":\"bits\",\"bits\":\"");
+            for (int bit : outputBits) {
+                line.append(bit);
+            }
+            line.append("\"}");
+        } else {
+            return; // rien d'autre que le message en binaire
+        }
+        out.println(line);
+    }
+
+    /**
+     * Report a decoding problem: on the output in TEXT or JSON format, on
+     * stderr in BINARY format so that the output only carries the message
+     *
+     * @param message the description of the problem
+     */
+    void warn(String message) {
+        if (format.equals(JSON)) {
+            out.println("{\"type\":\"warning\",\"message\":" + jsonString(message) + "}");
+        } else if (format.equals(BINARY)) {
+            System.err.println(message);
+        } else {
+            out.println(message);
+        }
+        out.flush(); // avertissement visible aussitôt, avant les sorties des autres classes
+    }
+
+    /**
+     * Print the properties of the wav file, in TEXT or JSON format
+     *
+     * @param path the path of the wav file
+     */
+    void printHeader(String path) {
+        if (format.equals(JSON)) {
+            out.println("{\"type\":\"header\",\"file\":" + jsonString(path) + ",\"sampleRate\":" + sampleRate
+                    + ",\"bitsPerSample\":" + bitsPerSample + ",\"dataSize\":"
+                    + (dataSize == UNKNOWN_SIZE ? "null" : String.valueOf(dataSize)) + "}");
+        } else if (format.equals(TEXT)) {
+            out.println("Fichier audio: " + path);
+            out.println("\tSample Rate: " + sampleRate + " Hz");
+            out.println("\tBits per Sample: " + bitsPerSample + " bits");
+            out.println("\tData Size: " + (dataSize == UNKNOWN_SIZE ? "inconnue" : dataSize + "bytes"));
+            if (verbose) {
+                out.println("\tNoyaux de calcul : " + KERNELS.name());
+            }
+        }
+    }
+
+    /**
+     * Print the decoded message: a text line, a JSON line, or the bytes of
+     * the message alone in BINARY format
+     */
+    void printMessage() {
+        if (decodedChars == null) {
+            return;
+        }
+        String message = new String(decodedChars);
+        if (format.equals(JSON)) {
+            out.println("{\"type\":\"message\",\"text\":" + jsonString(message) + "}");
+        } else if (format.equals(BINARY)) {
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+        } else {
+            out.println("Message décodé : " + message);
+        }
+    }
+
+    /**
+     * Quote a string for JSON
+     *
+     * @param text the string
+     * @return the string between double quotes, with its special characters escaped
+     */
+    static String jsonString(String text) {
+        StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"').toString();
+    }
 
     /**
      * Print the elements of an array
@@ -253,19 +736,8 @@ public class DosRead {
         StdDraw.setPenRadius(0.005); // Épaisseur de la ligne
         StdDraw.line(start, 0, stop, 0); // Ligne au milieu
 
-        if (mode.equals("line")) {
-            // Affichage du signal sous forme de ligne
-            for (int i = start; i < stop - 1; i++) {
-                StdDraw.line(i, sig[i], i + 1, sig[i + 1]); // Tracé des lignes entre les points successifs
-            }
-        } else if (mode.equals("point")) {
-            // Affichage du signal sous forme de points
-            for (int i = start; i < stop; i++) {
-                StdDraw.point(i, sig[i]); // Affichage des points du signal
-            }
-        } else {
-            System.out.println("Mode non pris en charge"); // Affichage d'un message si le mode n'est pas reconnu
-        }
+        // Affichage du signal, réduit à une enveloppe min/max par colonne de pixels s'il est long
+        DosPlot.drawSignal(sig, start, stop, mode, 1200);
     }
 
     /**
@@ -273,37 +745,131 @@ public class DosRead {
      * que vous aurez conçues.
      */
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: java DosRead <input_wav_file>");
+        if (args.length >= 1 && args[0].equals("--live")) {
+            // Réception directe : entrée audio, ou PCM brut sur l'entrée standard avec "-"
+            DosRead dosRead = new DosRead();
+            dosRead.bitsPerSample = 16;
+            try {
+                boolean stdin = false;
+                boolean scope = false; // --scope : oscilloscope en direct
+                boolean metrics = false; // --metrics : mesures des étapes en JSON sur stderr
+                for (int i = 1; i < args.length; i++) {
+                    stdin |= args[i].equals("-");
+                    scope |= args[i].equals("--scope");
+                    if (args[i].equals("--metrics")) {
+                        metrics = true;
+                        DosMetrics.enable();
+                    } else if (args[i].equals("--jmx")) {
+                        DosMetrics.enableJmx(); // mesures consultables avec jconsole
+                    }
+                }
+                InputStream in = stdin ? System.in : dosRead.openLiveInput();
+                dosRead.decodeLive(in, THRESHOLD, scope);
+                if (metrics) {
+                    DosMetrics.dump(System.err);
+                }
+            } catch (LineUnavailableException | IllegalArgumentException e) {
+                System.out.println("Entrée audio indisponible : " + e.getMessage());
+            }
+            return;
+        }
+        String wavFilePath = null;
+        String png = null; // --png fichier : tracé enregistré en image, sans fenêtre
+        boolean metrics = false; // --metrics : mesures des étapes en JSON sur stderr
+        boolean quality = false; // --quality : rapport de qualité du signal
+        boolean quiet = false; // -q : seulement le message, sans tracé
+        boolean decimate = false; // --decimate : enveloppe calculée après mélange et décimation
+        DosRead dosRead = new DosRead();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--quality")) {
+                quality = true;
+            } else if (args[i].equals("-q") || args[i].equals("--quiet")) {
+                quiet = true;
+            } else if (args[i].equals("-v") || args[i].equals("--verbose")) {
+                dosRead.verbose = true;
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                dosRead.format = args[++i];
+            } else if (args[i].equals("--png") && i + 1 < args.length) {
+                png = args[++i];
+                DosPlot.enableHeadless();
+            } else if (args[i].equals("--metrics")) {
+                metrics = true;
+                DosMetrics.enable();
+            } else if (args[i].equals("--jmx")) {
+                DosMetrics.enableJmx();
+            } else if (args[i].equals("--precision") && i + 1 < args.length) {
+                dosRead.precision = args[++i];
+            } else if (args[i].equals("--decimate")) {
+                decimate = true;
+            } else if (wavFilePath == null) {
+                wavFilePath = args[i];
+            }
+        }
+        if (wavFilePath == null) {
+            System.out.println("Usage: java DosRead <input_wav_file | -> [-q | -v] [--format text|json|bin] [--png plot.png]"
+                    + " [--quality] [--precision double|float|fixed] [--decimate] [--metrics] [--jmx]");
+            System.out.println("       java DosRead --live [-] [--scope] [--metrics] [--jmx]");
+            return;
+        }
+
+        if (!dosRead.format.equals(TEXT) && !dosRead.format.equals(JSON) && !dosRead.format.equals(BINARY)) {
+            System.out.println("Format de sortie inconnu : " + dosRead.format);
+            return;
+        }
+        if (!DosDsp.isPrecision(dosRead.precision)) {
+            System.out.println("Précision inconnue : " + dosRead.precision);
+            return;
+        }
+        if (decimate && !dosRead.precision.equals(DosDsp.DOUBLE)) {
+            System.out.println("--decimate ne fonctionne qu'en précision double");
             return;
         }
-        String wavFilePath = args[0];
 
         // Open the WAV file and read its header
-        DosRead dosRead = new DosRead();
         dosRead.readWavHeader(wavFilePath);
 
         // Print the audio data properties
-        System.out.println("Fichier audio: " + wavFilePath);
-        System.out.println("\tSample Rate: " + dosRead.sampleRate + " Hz");
-        System.out.println("\tBits per Sample: " + dosRead.bitsPerSample + " bits");
-        System.out.println("\tData Size: " + dosRead.dataSize + "bytes");
+        if (!quiet) {
+            dosRead.printHeader(wavFilePath);
+        }
 
         // Read the audio data
         dosRead.readAudioDouble();
-        // reverse the negative values
-        dosRead.audioRectifier();
-        // apply a low pass filter
-        dosRead.audioLPFilter(44);
+        if (decimate) {
+            // carrier mixed down and decimated: envelope at a lower rate
+            dosRead.audioMixAndDecimate(dosRead.decimationFactor());
+        } else {
+            // reverse the negative values
+            dosRead.audioRectifier();
+            // apply a low pass filter
+            dosRead.audioLPFilter(dosRead.lpWindow());
+        }
         // Resample audio data and apply a threshold to output only 0 & 1
-        dosRead.audioResampleAndThreshold(dosRead.sampleRate / BAUDS, 12000);
+        dosRead.audioResampleAndThreshold((double) dosRead.sampleRate / dosRead.decimation / BAUDS, THRESHOLD);
         dosRead.decodeBitsToChar();
-        if (dosRead.decodedChars != null) {
-            System.out.print("Message décodé : ");
-            printIntArray(dosRead.decodedChars);
+        dosRead.printMessage();
+        if (quality) {
+            SignalQuality report = dosRead.qualityReport();
+            if (dosRead.format.equals(JSON)) {
+                dosRead.out.println("{\"type\":\"quality\"," + report.toJson().substring(1));
+            } else if (dosRead.format.equals(BINARY)) {
+                System.err.println(report);
+            } else {
+                dosRead.out.println(report);
+            }
+        }
+        dosRead.out.flush();
+        if (metrics) {
+            DosMetrics.dump(System.err);
         }
 
-        displaySig(dosRead.audio, 0, dosRead.audio.length - 1, "line", "Signal audio");
+        // Tracé seulement en sortie lisible, ou s'il est enregistré en image
+        if (png != null || (!quiet && dosRead.format.equals(TEXT))) {
+            displaySig(dosRead.signal(), 0, dosRead.samples - 1, "line", "Signal audio");
+        }
+        if (png != null) {
+            DosPlot.savePlot(png);
+        }
 
         // Close the file input stream
         try {
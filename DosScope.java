@@ -0,0 +1,179 @@
+/**
+ * Live scrolling oscilloscope of the streaming demodulator.
+ * The demodulator thread only stores the envelope and the decided bits in
+ * ring buffers and publishes their positions; a separate thread redraws
+ * the last seconds at a capped frame rate. The demodulator never waits for
+ * the display: when the display is late, frames are simply skipped.
+ * <p>
+ * The scope wraps the listener of the decoded data, to which the bytes and
+ * the ends of frames are forwarded unchanged.
+ */
+public class DosScope implements OokDemodulator.Listener {
+
+    static final int WIDTH = 1200; // largeur de la fenêtre en pixels
+    static final int HEIGHT = 500; // hauteur de la fenêtre en pixels
+    static final double SECONDS = 1; // durée affichée
+    static final int FRAME_MS = 40; // période de rafraîchissement (25 images/s au plus)
+    static final int PUBLISH = 256; // échantillons entre deux publications de la position
+    static final int MAX_BITS = 1024; // bits mémorisés pour l'affichage
+
+    final OokDemodulator.Listener next; // destinataire des octets décodés
+    final int sampleRate; // fréquence d'échantillonnage
+    final double period; // nombre d'échantillons par symbole
+    final double threshold; // seuil de décision, entre 0 et 1
+
+    private final float[] envelope; // dernières valeurs de l'enveloppe
+    private long count; // échantillons reçus (fil du démodulateur)
+    private volatile long written; // échantillons publiés pour l'affichage
+
+    private final long[] bitEnd = new long[MAX_BITS]; // fin de chaque bit, en échantillons
+    private final byte[] bitValue = new byte[MAX_BITS]; // valeur de chaque bit
+    private final float[] bitLevel = new float[MAX_BITS]; // niveau moyen de chaque bit
+    private long bits; // bits reçus (fil du démodulateur)
+    private volatile long bitsWritten; // bits publiés pour l'affichage
+
+    private final double[] window; // copie de la fenêtre affichée (fil d'affichage)
+    private volatile boolean running;
+    private Thread renderer; // fil d'affichage
+
+    /**
+     * Constructor
+     *
+     * @param next       the receiver of the decoded bytes and frames
+     * @param sampleRate the sample rate of the input signal
+     * @param bauds      the symbol rate
+     * @param threshold  the decision threshold, as a fraction of the full scale
+     */
+    public DosScope(OokDemodulator.Listener next, int sampleRate, int bauds, double threshold) {
+        this.next = next;
+        this.sampleRate = sampleRate;
+        this.period = (double) sampleRate / bauds;
+        this.threshold = threshold;
+        envelope = new float[(int) (SECONDS * sampleRate)];
+        window = new double[envelope.length];
+    }
+
+    @Override
+    public void onEnvelope(double env) {
+        envelope[(int) (count % envelope.length)] = (float) env;
+        count++;
+        if (count % PUBLISH == 0) {
+            written = count; // Une seule écriture volatile tous les PUBLISH échantillons
+        }
+    }
+
+    @Override
+    public void onBit(int bit, double level) {
+        int k = (int) (bits % MAX_BITS);
+        bitEnd[k] = count;
+        bitValue[k] = (byte) bit;
+        bitLevel[k] = (float) level;
+        bits++;
+        bitsWritten = bits;
+        written = count;
+        next.onBit(bit, level);
+    }
+
+    @Override
+    public void onByte(int value) {
+        next.onByte(value);
+    }
+
+    @Override
+    public void onFrameEnd(int flag, int length) {
+        next.onFrameEnd(flag, length);
+    }
+
+    /**
+     * Open the window and start the display thread
+     */
+    public void start() {
+        StdDraw.setCanvasSize(WIDTH, HEIGHT);
+        StdDraw.setTitle("DosScope - enveloppe en direct");
+        StdDraw.enableDoubleBuffering();
+        running = true;
+        renderer = new Thread(() -> {
+            while (running) {
+                long t0 = System.currentTimeMillis();
+                draw();
+                long wait = FRAME_MS - (System.currentTimeMillis() - t0);
+                if (wait > 0) {
+                    StdDraw.pause((int) wait);
+                }
+            }
+            draw(); // Dernière image, avec la fin du signal
+        }, "DosScope");
+        renderer.setDaemon(true);
+        renderer.start();
+    }
+
+    /**
+     * Stop the display thread after its last frame
+     */
+    public void stop() {
+        written = count;
+        running = false;
+        try {
+            renderer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Draw the last SECONDS of the envelope, the thresholds and the decided bits
+     */
+    private void draw() {
+        long end = written;
+        int n = (int) Math.min(end, envelope.length);
+        long first = end - envelope.length; // premier échantillon de la fenêtre
+
+        // Copie de la fenêtre : le démodulateur continue d'écrire pendant le tracé
+        double top = 2 * threshold;
+        for (int i = 0; i < n; i++) {
+            long s = end - n + i;
+            window[envelope.length - n + i] = envelope[(int) (s % envelope.length)];
+            top = Math.max(top, window[envelope.length - n + i] * 1.1);
+        }
+
+        StdDraw.clear();
+        StdDraw.setXscale(-0.03 * envelope.length, 1.03 * envelope.length); // Marges pour les graduations
+        StdDraw.setYscale(-0.15 * top, 1.1 * top);
+
+        // Graduations en secondes depuis le début de la réception
+        StdDraw.setPenColor(StdDraw.BLACK);
+        StdDraw.setPenRadius(0.002);
+        for (int k = 0; k <= 10; k++) {
+            double x = (envelope.length - 1) * k / 10.0;
+            if (first + x >= 0) {
+                StdDraw.text(x, -0.1 * top, String.format("%.2f s", (first + x) / sampleRate));
+            }
+        }
+
+        // Seuils de décision : montée (plein) et retombée de l'hystérésis (gris)
+        StdDraw.setPenColor(StdDraw.RED);
+        StdDraw.line(0, threshold, envelope.length - 1, threshold);
+        StdDraw.setPenColor(StdDraw.GRAY);
+        StdDraw.line(0, threshold / 2, envelope.length - 1, threshold / 2);
+
+        StdDraw.setPenColor(StdDraw.BOOK_BLUE);
+        DosPlot.drawSignal(window, 0, envelope.length - 1, "line", WIDTH);
+
+        // Bits décidés, au centre de leur symbole (valeurs écrites s'il y a la place)
+        boolean labels = period * WIDTH / envelope.length >= 10;
+        long b = bitsWritten;
+        for (long j = Math.max(0, b - MAX_BITS); j < b; j++) {
+            int k = (int) (j % MAX_BITS);
+            double x = bitEnd[k] - period / 2 - first;
+            if (x < 0 || x > envelope.length) {
+                continue; // hors de la fenêtre affichée
+            }
+            StdDraw.setPenColor(bitValue[k] == 1 ? StdDraw.RED : StdDraw.DARK_GRAY);
+            StdDraw.line(x - period / 4, bitLevel[k], x + period / 4, bitLevel[k]); // Niveau intégré
+            if (labels) {
+                StdDraw.text(x, 1.03 * top, String.valueOf(bitValue[k]));
+            }
+        }
+        StdDraw.show();
+    }
+}
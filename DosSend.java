@@ -1,37 +1,89 @@
-import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.zip.Deflater;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
 
 public class DosSend {
 
-    final int FECH = 44100; // fréquence d'échantillonnage
+    int FECH = 44100; // fréquence d'échantillonnage (modifiable avec --rate, pour des fichiers plus petits)
     final int FP = 1000; // fréquence de la porteuse
-    final int BAUDS = 100; // débit en symboles par seconde
+    int BAUDS = 100; // débit en symboles par seconde (modifiable pour les essais de débit)
     final int FMT = 16; // format des données
     final int MAX_AMP = (1 << (FMT - 1)) - 1; // amplitude max en entier
     final int CHANNELS = 1; // nombre de voies audio (1 = mono)
     final int[] START_SEQ = { 1, 0, 1, 0, 1, 0, 1, 0 }; // séquence de synchro au début
+    static final int FLAG_RAW = 0; // charge utile transmise telle quelle
+    static final int FLAG_DEFLATE = 1; // charge utile compressée en DEFLATE
+    static final int MAX_PAYLOAD = 0xFFFF; // taille max de la charge utile (longueur sur 16 bits)
+    static final int DEFAULT_BUFFER = 2048; // taille par défaut du tampon de diffusion (en échantillons)
+    static final int UNKNOWN_SIZE = 0xFFFFFFFF; // taille inconnue (convention des wav diffusés en flux)
+    static final int O_APPEND = 02000; // drapeau d'ouverture en ajout, dans /proc/self/fdinfo
+    static final int WRITE_BLOCK = 1 << 16; // octets convertis puis écrits à la fois dans le fichier wav
+    static final int BURST_GAP = 10; // symboles de silence avant un message ajouté à la suite d'un autre
     final Scanner input = new Scanner(System.in); // pour lire le fichier texte
 
     long taille; // nombre d'octets de données à transmettre
     double duree; // durée de l'audio
-    double[] dataMod; // données modulées
+    double[] dataMod; // données modulées (tableau du pool, souvent plus long que dataLength)
+    int dataLength; // nombre d'échantillons utiles dans dataMod
+    String precision = DosDsp.DOUBLE; // précision de la modulation : DosDsp.DOUBLE, FLOAT ou FIXED
+    double rolloff = 0; // part du symbole occupée par chaque transition en cosinus surélevé (0 = créneaux)
+    float[] dataModFloat; // données modulées en float, à la place de dataMod en précision FLOAT
+    short[] dataPcm; // échantillons PCM 16 bits, à la place de dataMod en précision FIXED
+    BufferPool pool = BufferPool.SHARED; // tampons réutilisés d'un message à l'autre
     char[] dataChar; // données en char
-    FileOutputStream outStream; // flux de sortie pour le fichier .wav
+    boolean compress = false; // active la compression de la charge utile
+    int payloadFlag = FLAG_RAW; // drapeau de compression effectivement utilisé
+    int payloadSize; // taille de la charge utile en octets
+    OutputStream outStream; // flux de sortie pour le fichier .wav
+    String outputPath; // fichier wav à créer, null si la sortie est stdout
+    FileChannel stdoutFile; // fichier derrière stdout (> out.wav), null pour un tube
+    WavWriter wav; // fichier de sortie, ouvert par writeWavHeader
+    boolean append = false; // ajoute le message à la fin du fichier wav s'il existe déjà
+    long dataBytes; // nombre d'octets de données audio écrits
+    int underruns; // nombre de fois où le tampon audio s'est vidé pendant la diffusion
+    long samplesStreamed; // nombre d'échantillons diffusés
+
+    /**
+     * Constructor without output file, for streaming the signal
+     */
+    public DosSend() {
+    }
 
     /**
      * Constructor
      *
-     * @param path the path of the wav file to create
+     * @param path the path of the wav file to create, or "-" for stdout
      */
     public DosSend(String path) {
-        File file = new File(path); // Création d un nouvel objet fichier à partir du chemin spécifié
-        try {
-            outStream = new FileOutputStream(file); //Initialise un flux de sortie vers le fichier
-        } catch (Exception e) {
-            System.out.println("Erreur de création du fichier"); // Affiche un message d'erreur
+        if (path.equals("-")) {
+            stdoutFile = stdoutFile();
+            if (stdoutFile == null) {
+                outStream = new BufferedOutputStream(System.out); // Sortie standard, non positionnable
+            }
+            return;
         }
+        outputPath = path; // créé par writeWavHeader, une fois la fréquence d'échantillonnage choisie
     }
 
     /**
@@ -41,7 +93,7 @@ public class DosSend {
      * @param taille     the size to write
      * @param destStream the stream to write in
      */
-    public void writeLittleEndian(int octets, int taille, FileOutputStream destStream) {
+    public void writeLittleEndian(int octets, int taille, OutputStream destStream) {
         char poidsFaible;
         while (taille > 0) {
             poidsFaible = (char) (octets & 0xFF);
@@ -56,14 +108,52 @@ public class DosSend {
     }
 
     /**
-     * Create and write the header of a wav file
+     * Create and write the header of a wav file.
+     * On a file the header is written by WavWriter when it creates the file,
+     * with room for the RF64 sizes, and closeWav writes the actual sizes.
+     * With append, an existing file is reopened after its last sample
+     * instead, and a short silence separates the new message from the
+     * previous one. When stdout is redirected to a file, WavWriter writes
+     * the header and the sizes in the same way. On a pipe the header leaves
+     * before the data and cannot be patched, so both sizes use the
+     * 0xFFFFFFFF streaming convention.
      */
     public void writeWavHeader() {
         taille = (long) (FECH * duree);
-        long nbBytes = taille * CHANNELS * FMT / 8;
+        dataBytes = 0;
+        if (stdoutFile != null) {
+            try {
+                // stdout redirigé vers un fichier : tailles écrites à la fermeture
+                wav = WavWriter.create(stdoutFile, FECH, CHANNELS, FMT);
+                outStream = new BufferedOutputStream(Channels.newOutputStream(wav));
+            } catch (IOException e) {
+                System.err.println("Erreur d'écriture : " + e.getMessage());
+            }
+            return;
+        }
+        if (outputPath != null) {
+            Path path = Paths.get(outputPath);
+            try {
+                if (append && Files.exists(path)) {
+                    // Fichier existant : écriture à la suite de ses données, tailles mises à jour à la fermeture
+                    wav = WavWriter.append(path, FECH, CHANNELS, FMT);
+                    outStream = new BufferedOutputStream(Channels.newOutputStream(wav));
+                    if (wav.dataBytes() > 0) {
+                        writeSilence(symbolStart(BURST_GAP)); // le récepteur retrouve le front de synchro
+                    }
+                } else {
+                    // Fichier créé avec son entête provisoire, tailles écrites à la fermeture
+                    wav = WavWriter.create(path, FECH, CHANNELS, FMT);
+                    outStream = new BufferedOutputStream(Channels.newOutputStream(wav));
+                }
+            } catch (IOException e) {
+                System.out.println("Erreur de création du fichier : " + e.getMessage()); // Affiche un message d'erreur
+            }
+            return;
+        }
         try {
             outStream.write(new byte[] { 'R', 'I', 'F', 'F' });
-            writeLittleEndian((int) (taille + 36), 4, outStream); // Taille totale du fichier - 8
+            writeLittleEndian(UNKNOWN_SIZE, 4, outStream); // Taille totale du fichier - 8
             outStream.write(new byte[] { 'W', 'A', 'V', 'E' });
             outStream.write(new byte[] { 'f', 'm', 't', ' ' });
             writeLittleEndian(16, 4, outStream); // Taille du format PCM
@@ -74,13 +164,50 @@ public class DosSend {
             writeLittleEndian(CHANNELS * FMT / 8, 2, outStream); // Alignement des blocs (block align)
             writeLittleEndian(FMT, 2, outStream); // Bits par échantillon (bits per sample)
             outStream.write(new byte[] { 'd', 'a', 't', 'a' });
-            writeLittleEndian((int) nbBytes, 4, outStream); // Taille des données
+            writeLittleEndian(UNKNOWN_SIZE, 4, outStream); // Taille des données
 
         } catch (Exception e) {
             System.out.printf(e.toString());
         }
     }
 
+    /**
+     * @return the channel of stdout when it is redirected to a regular file,
+     *         at position 0 and not in append mode (on Linux the positional
+     *         writes of a file opened with O_APPEND go to its end), or null:
+     *         pipe, terminal, or no /proc to check it
+     */
+    static FileChannel stdoutFile() {
+        try {
+            if (!Files.isRegularFile(Paths.get("/proc/self/fd/1"))) {
+                return null;
+            }
+            for (String line : Files.readAllLines(Paths.get("/proc/self/fdinfo/1"))) {
+                if (line.startsWith("flags:") && (Integer.parseInt(line.substring(6).trim(), 8) & O_APPEND) != 0) {
+                    return null; // >> fichier
+                }
+            }
+            FileChannel channel = new FileOutputStream(FileDescriptor.out).getChannel();
+            return channel.position() == 0 ? channel : null;
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write silent samples in the wav file
+     *
+     * @param samples the number of samples
+     * @throws IOException if the output cannot be written
+     */
+    public void writeSilence(long samples) throws IOException {
+        byte[] zero = new byte[CHANNELS * FMT / 8];
+        for (long i = 0; i < samples; i++) {
+            outStream.write(zero);
+        }
+        dataBytes += samples * zero.length;
+    }
+
     /**
      * Write the data in the wav file
      * after normalizing its amplitude to the maximum value of the format (16 bits
@@ -88,26 +215,57 @@ public class DosSend {
      */
     public void writeNormalizeWavData() {
         try {
-            if (dataMod == null) {
+            if (dataMod == null && dataModFloat == null && dataPcm == null) {
                 System.out.println("Erreur : Les données modulées ne sont pas disponibles.");
                 return;
             }
+            DosMetrics.Timer timer = DosMetrics.start("writeNormalizeWavData");
 
-            // Écriture des données normalisées dans le fichier .wav
-            for (double sample : dataMod) {
+            // Écriture des données normalisées dans le fichier .wav, par blocs convertis dans un tampon du pool
+            ByteBuffer block = pool.acquireBytes(WRITE_BLOCK);
+            WritableByteChannel channel = Channels.newChannel(outStream);
+            for (int i = 0; i < dataLength; i++) {
                 // Normalisation de l'amplitude au format FMT bits avec MAX_AMP
-                // Convertir l'échantillon en format PCM 16 bits (int)
-                int normalizedSample = (int) (sample * MAX_AMP);
-                writeLittleEndian(normalizedSample, FMT / 8, outStream);
+                // Convertir l'échantillon en format PCM 16 bits
+                if (dataPcm != null) {
+                    block.putShort(dataPcm[i]); // déjà en PCM
+                } else if (dataModFloat != null) {
+                    block.putShort((short) (dataModFloat[i] * MAX_AMP));
+                } else {
+                    block.putShort((short) (dataMod[i] * MAX_AMP));
+                }
+                if (!block.hasRemaining() || i == dataLength - 1) {
+                    block.flip();
+                    while (block.hasRemaining()) {
+                        channel.write(block);
+                    }
+                    block.clear();
+                }
             }
+            pool.release(block);
+            dataBytes += (long) dataLength * FMT / 8;
 
             // Fermeture du flux de sortie
-            outStream.close();
+            closeWav();
+            timer.stop(dataLength);
         } catch (Exception e) {
             System.out.println("Erreur d'écritureddd");
         }
     }
 
+    /**
+     * Flush the wav data and, when the output is a file, close it: WavWriter
+     * then writes the sizes of the data actually written (RF64 beyond 4 GB)
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void closeWav() throws IOException {
+        outStream.flush();
+        if (wav != null) {
+            outStream.close();
+        }
+    }
+
     /**
      * Read the text data to encode and store them into dataChar
      *
@@ -119,6 +277,70 @@ public class DosSend {
         return dataChar.length; // Renvoie de la longueur du tableau de caractères
     }
 
+    /**
+     * Compress a byte array with raw DEFLATE (no zlib header nor checksum)
+     *
+     * @param data the bytes to compress
+     * @return the compressed bytes
+     */
+    public static byte[] compressData(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        byte[] buffer = new byte[512];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /**
+     * Build the frame to transmit after the START_SEQ :
+     * one flag byte (FLAG_RAW or FLAG_DEFLATE), the payload length on
+     * two bytes (big endian) and the payload itself.
+     * The payload is the UTF-8 encoding of the message, compressed only when
+     * compression is enabled and actually makes it shorter.
+     *
+     * @param chars the message to transmit
+     * @return the frame, one byte (0-255) per char, ready for charToBits
+     */
+    public char[] buildFrame(char[] chars) {
+        return buildFrame(new String(chars).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Build the frame of a payload given as bytes (binary messages)
+     *
+     * @param payload the bytes to transmit, compressed if compression is enabled
+     * @return the frame, one byte (0-255) per char, ready for charToBits
+     */
+    public char[] buildFrame(byte[] payload) {
+        payloadFlag = FLAG_RAW;
+        if (compress) {
+            byte[] compressed = compressData(payload);
+            if (compressed.length < payload.length) { // inutile d'envoyer plus long que l'original
+                payload = compressed;
+                payloadFlag = FLAG_DEFLATE;
+            }
+        }
+        if (payload.length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Message trop long : " + payload.length + " octets (max " + MAX_PAYLOAD + ")");
+        }
+        payloadSize = payload.length;
+
+        char[] frame = new char[3 + payload.length];
+        frame[0] = (char) payloadFlag; // drapeau de compression
+        frame[1] = (char) ((payload.length >> 8) & 0xFF); // longueur, poids fort
+        frame[2] = (char) (payload.length & 0xFF); // longueur, poids faible
+        for (int i = 0; i < payload.length; i++) {
+            frame[3 + i] = (char) (payload[i] & 0xFF);
+        }
+        return frame;
+    }
+
     /**
      * convert a char array to a bit array
      *
@@ -126,6 +348,7 @@ public class DosSend {
      * @return byte array containing only 0 & 1
      */
     public byte[] charToBits(char[] chars) {
+        DosMetrics.Timer timer = DosMetrics.start("charToBits");
         int totalBits = chars.length * 8 + START_SEQ.length; // Calcul du nombre total de bits
         byte[] result = new byte[totalBits]; // Initialisation du tableau pour stocker les bits
 
@@ -142,6 +365,7 @@ public class DosSend {
             }
         }
 
+        timer.stop(totalBits);
         return result; // Renvoie le tableau contenant les bits convertis
     }
 
@@ -151,18 +375,284 @@ public class DosSend {
      * @param bits the data to modulate
      */
     public void modulateData(byte[] bits) {
-        dataMod = new double[bits.length * FECH / BAUDS]; // Initialisation de dataMod
+        DosMetrics.Timer timer = DosMetrics.start("modulateData");
+        release(); // Rend le signal du message précédent
+        dataLength = symbolStart(bits.length);
 
+        // Modulation ASK (Amplitude Shift Keying), un symbole après l'autre
+        if (precision.equals(DosDsp.FLOAT)) {
+            dataModFloat = pool.acquireFloats(dataLength);
+            for (int i = 0; i < bits.length; i++) {
+                modulateSymbol(bits, i, dataModFloat, symbolStart(i));
+            }
+        } else if (precision.equals(DosDsp.FIXED)) {
+            dataPcm = pool.acquireShorts(dataLength);
+            for (int i = 0; i < bits.length; i++) {
+                modulateSymbol(bits, i, dataPcm, symbolStart(i));
+            }
+        } else {
+            dataMod = pool.acquireDoubles(dataLength); // Initialisation de dataMod
+            for (int i = 0; i < bits.length; i++) {
+                modulateSymbol(bits, i, dataMod, symbolStart(i));
+            }
+        }
+        timer.stop(dataLength);
+    }
+
+    /**
+     * Give the modulated signal back to the pool, once it is written and
+     * not needed any more
+     */
+    public void release() {
+        pool.release(dataMod);
+        pool.release(dataModFloat);
+        pool.release(dataPcm);
+        dataMod = null;
+        dataModFloat = null;
+        dataPcm = null;
+        dataLength = 0;
+    }
+
+    /**
+     * First sample of a symbol. When FECH / BAUDS is not an integer (22050 Hz
+     * at 100 bauds for example) the symbols are one sample longer or shorter
+     * so that the symbol clock does not drift. The boundaries are those of
+     * DspKernels.symbolStart, the ones DosRead uses to cut the symbols.
+     *
+     * @param i the index of the symbol (the number of symbols for the end of the signal)
+     * @return the index of its first sample
+     */
+    int symbolStart(int i) {
+        return DspKernels.symbolStart(i, (double) FECH / BAUDS);
+    }
+
+    /**
+     * @return the number of samples after which the carrier phase comes back
+     *         exactly to 0 (441 at 44100 Hz with a 1000 Hz carrier)
+     */
+    int carrierCycle() {
+        return FECH / DosRead.gcd(FECH, FP);
+    }
+
+    /**
+     * Amplitude of the carrier at one sample of a symbol. Without shaping
+     * (rolloff = 0) it is the bit itself. Otherwise each change of bit is a
+     * raised cosine ramp of rolloff symbols, centered on the boundary between
+     * the symbols, and the signal starts and ends at 0 amplitude.
+     *
+     * @param bits   the data to modulate
+     * @param i      the index of the symbol
+     * @param j      the index of the sample in the symbol
+     * @param length the number of samples of the symbol
+     * @return the amplitude, between 0 and 1
+     */
+    double amplitude(byte[] bits, int i, int j, int length) {
+        if (rolloff <= 0) {
+            return bits[i]; // 1 correspond à une amplitude maximale, 0 correspond à aucune amplitude
+        }
+        int previous = i > 0 ? bits[i - 1] : 0; // silence avant le premier symbole
+        int next = i + 1 < bits.length ? bits[i + 1] : 0; // silence après le dernier symbole
+        return amplitude(previous, bits[i], next, j, length, rolloff);
+    }
+
+    /**
+     * Amplitude of the carrier at one sample of a symbol, knowing the
+     * neighbouring bits (0 before the first symbol and after the last one).
+     * Shared with OokEncoder.
+     *
+     * @param previous the bit of the previous symbol
+     * @param bit      the bit of the symbol
+     * @param next     the bit of the next symbol
+     * @param j        the index of the sample in the symbol
+     * @param length   the number of samples of the symbol
+     * @param rolloff  the length of the transitions, in symbols (0 = square)
+     * @return the amplitude, between 0 and 1
+     */
+    static double amplitude(int previous, int bit, int next, int j, int length, double rolloff) {
+        if (rolloff <= 0) {
+            return bit;
+        }
+        double ramp = rolloff * length; // durée d'une transition en échantillons
+        if (j < ramp / 2) {
+            return previous + (bit - previous) * raisedCosine(j + ramp / 2, ramp);
+        } else if (j >= length - ramp / 2) {
+            return bit + (next - bit) * raisedCosine(j - (length - ramp / 2), ramp);
+        }
+        return bit;
+    }
+
+    /**
+     * @return the raised cosine ramp from 0 to 1 at x samples of a ramp of
+     *         the given length
+     */
+    private static double raisedCosine(double x, double ramp) {
+        return 0.5 - 0.5 * Math.cos(Math.PI * x / ramp);
+    }
+
+    /**
+     * Modulate one symbol (about FECH / BAUDS samples) into an array.
+     * The carrier phase follows the sample index of the whole signal, so it
+     * is continuous from one symbol to the next even when a symbol is not a
+     * whole number of carrier periods.
+     *
+     * @param bits   the data to modulate
+     * @param i      the index of the symbol to modulate
+     * @param dest   the array to fill
+     * @param offset the first sample to fill in dest
+     */
+    public void modulateSymbol(byte[] bits, int i, double[] dest, int offset) {
         // Calcul de la fréquence angulaire de la porteuse
         double omegaP = 2 * Math.PI * FP / FECH;
+        int start = symbolStart(i); // premier échantillon du symbole dans le signal
+        int cycle = carrierCycle();
+        int length = symbolStart(i + 1) - start; // échantillons du symbole
+        for (int j = 0; j < length; j++) {
+            // Modulation de l'amplitude de la porteuse, phase prise modulo un cycle exact pour la précision
+            dest[offset + j] = amplitude(bits, i, j, length) * Math.sin(omegaP * ((start + j) % cycle));
+        }
+    }
 
-        // Modulation ASK (Amplitude Shift Keying)
-        for (int i = 0; i < bits.length; i++) {
-            double amplitude = bits[i] == 1 ? 1.0 : 0.0; // 1 correspond à une amplitude maximale, 0 correspond à aucune amplitude
-            for (int j = 0; j < FECH / BAUDS; j++) {
-                dataMod[i * FECH / BAUDS + j] = amplitude * Math.sin(omegaP * j); // Modulation de l'amplitude de la porteuse
+    /**
+     * Modulate one symbol into an array of floats (FLOAT precision)
+     *
+     * @param bits   the data to modulate
+     * @param i      the index of the symbol to modulate
+     * @param dest   the array to fill
+     * @param offset the first sample to fill in dest
+     */
+    public void modulateSymbol(byte[] bits, int i, float[] dest, int offset) {
+        double omegaP = 2 * Math.PI * FP / FECH;
+        int start = symbolStart(i);
+        int cycle = carrierCycle();
+        int length = symbolStart(i + 1) - start; // échantillons du symbole
+        for (int j = 0; j < length; j++) {
+            dest[offset + j] = (float) amplitude(bits, i, j, length) * (float) Math.sin(omegaP * ((start + j) % cycle));
+        }
+    }
+
+    /**
+     * Modulate one symbol directly into 16 bits PCM samples (FIXED
+     * precision); the samples are the ones writeNormalizeWavData writes from
+     * the double path
+     *
+     * @param bits   the data to modulate
+     * @param i      the index of the symbol to modulate
+     * @param dest   the array to fill
+     * @param offset the first sample to fill in dest
+     */
+    public void modulateSymbol(byte[] bits, int i, short[] dest, int offset) {
+        double omegaP = 2 * Math.PI * FP / FECH;
+        int start = symbolStart(i);
+        int cycle = carrierCycle();
+        int length = symbolStart(i + 1) - start; // échantillons du symbole
+        for (int j = 0; j < length; j++) {
+            // Même calcul et même arrondi que le chemin double suivi de l'écriture du wav
+            dest[offset + j] = (short) (amplitude(bits, i, j, length) * Math.sin(omegaP * ((start + j) % cycle)) * MAX_AMP);
+        }
+    }
+
+    /**
+     * @return the modulated signal as doubles (a copy for the FLOAT and FIXED
+     *         precisions), for the display
+     */
+    public double[] signal() {
+        if (precision.equals(DosDsp.FLOAT)) {
+            return DosDsp.toDouble(dataModFloat, dataLength);
+        } else if (precision.equals(DosDsp.FIXED)) {
+            double[] sig = new double[dataLength];
+            for (int i = 0; i < dataLength; i++) {
+                sig[i] = dataPcm[i] / (double) MAX_AMP; // Entre -1 et 1 comme dataMod
+            }
+            return sig;
+        }
+        return dataMod;
+    }
+
+    /**
+     * Stream the modulated signal as raw PCM (16 bits signed, little endian, mono)
+     * without building the whole signal first
+     *
+     * @param bits       the data to modulate
+     * @param out        the stream to write in (stdout for piping)
+     * @param bufferSize the number of samples written at once
+     */
+    public void streamData(byte[] bits, OutputStream out, int bufferSize) {
+        DosMetrics.Timer timer = DosMetrics.start("streamData");
+        streamPcm(bits, bufferSize, out, null);
+        dataBytes += samplesStreamed * FMT / 8;
+        timer.stop(samplesStreamed);
+    }
+
+    /**
+     * Play the modulated signal on the default audio output while it is generated
+     *
+     * @param bits       the data to modulate
+     * @param bufferSize the number of samples written at once; the audio line
+     *                   buffers twice this size
+     * @throws LineUnavailableException if no audio output is available
+     */
+    public void playData(byte[] bits, int bufferSize) throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(FECH, FMT, CHANNELS, true, false);
+        SourceDataLine line = AudioSystem.getSourceDataLine(format);
+        line.open(format, 2 * bufferSize * CHANNELS * FMT / 8);
+        streamPcm(bits, bufferSize, null, line);
+        line.drain();
+        line.close();
+    }
+
+    /**
+     * Modulate the symbols one by one and write the PCM samples by blocks of
+     * bufferSize samples, either to a stream or to an audio line.
+     * The line is started once the first block is queued, and an underrun is
+     * counted each time its buffer is found empty before a write.
+     */
+    private void streamPcm(byte[] bits, int bufferSize, OutputStream out, SourceDataLine line) {
+        double[] symbol = new double[symbolStart(1) + 1]; // place pour le plus long des symboles
+        byte[] buffer = new byte[bufferSize * FMT / 8];
+        int filled = 0; // octets présents dans le tampon
+        underruns = 0;
+        samplesStreamed = 0;
+        try {
+            for (int i = 0; i < bits.length; i++) {
+                modulateSymbol(bits, i, symbol, 0);
+                int length = symbolStart(i + 1) - symbolStart(i); // échantillons du symbole
+                for (int j = 0; j < length; j++) {
+                    int normalizedSample = (int) (symbol[j] * MAX_AMP);
+                    buffer[filled++] = (byte) (normalizedSample & 0xFF);
+                    buffer[filled++] = (byte) ((normalizedSample >> 8) & 0xFF);
+                    if (filled == buffer.length) {
+                        writeBlock(buffer, filled, out, line);
+                        filled = 0;
+                    }
+                }
+            }
+            if (filled > 0) {
+                writeBlock(buffer, filled, out, line);
+            }
+            if (out != null) {
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Erreur d'écriture : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write one block of PCM bytes to the stream or the audio line
+     */
+    private void writeBlock(byte[] buffer, int length, OutputStream out, SourceDataLine line) throws IOException {
+        if (line != null) {
+            if (line.isRunning() && line.available() >= line.getBufferSize()) {
+                underruns++; // la carte son a tout consommé avant ce bloc
+            }
+            line.write(buffer, 0, length);
+            if (!line.isRunning()) {
+                line.start(); // démarrage dès le premier bloc
             }
+        } else {
+            out.write(buffer, 0, length);
         }
+        samplesStreamed += length / (FMT / 8);
     }
 
     /**
@@ -175,13 +665,65 @@ public class DosSend {
      * @param title the title of the window
      */
     public static void displaySig(double[] sig, int start, int stop, String mode, String title) {
+        drawFrame(start, stop, title);
+
+        // Affichage du signal, réduit à une enveloppe min/max par colonne de pixels s'il est long
+        DosPlot.drawSignal(sig, start, stop, mode, 800);
+    }
+
+    /**
+     * Display signals in a window
+     *
+     * @param listOfSigs a list of the signals to display
+     * @param start      the first sample to display
+     * @param stop       the last sample to display
+     * @param mode       "line" or "point"
+     * @param title      the title of the window
+     */
+    public static void displaySig(List<double[]> listOfSigs, int start, int stop, String mode, String title) {
+        List<String> labels = new ArrayList<>();
+        for (int k = 0; k < listOfSigs.size(); k++) {
+            labels.add("Signal " + (k + 1));
+        }
+        displaySig(listOfSigs, labels, start, stop, mode, title);
+    }
+
+    /**
+     * Display signals in a window, one color per signal, with a legend
+     *
+     * @param listOfSigs a list of the signals to display
+     * @param labels     the legend of each signal
+     * @param start      the first sample to display
+     * @param stop       the last sample to display
+     * @param mode       "line" or "point"
+     * @param title      the title of the window
+     */
+    public static void displaySig(List<double[]> listOfSigs, List<String> labels, int start, int stop, String mode, String title) {
+        StdDraw.enableDoubleBuffering(); // Un seul rafraîchissement pour tous les signaux
+        drawFrame(start, stop, title);
+
+        // Affichage des signaux, décimés ensemble s'ils sont longs
+        DosPlot.drawSignals(listOfSigs, labels, start, stop, mode, 800);
+        StdDraw.show();
+        StdDraw.disableDoubleBuffering();
+    }
+
+    /**
+     * Prepare the window of displaySig : canvas, scales, graduations of the
+     * x axis and horizontal axis
+     *
+     * @param start the first sample to display
+     * @param stop  the last sample to display
+     * @param title the title of the window
+     */
+    private static void drawFrame(int start, int stop, String title) {
         StdDraw.setCanvasSize(800, 400); // Définition de la taille du canvas
         StdDraw.setXscale(start, stop); // Définition de l'échelle sur l'axe x
         StdDraw.setYscale(-1.1, 1.1); // Définition de l'échelle sur l'axe y
         StdDraw.setTitle(title); // Définition du titre de la fenêtre
 
         // Affichage de l'échelle de graduation sur l'axe x
-        for (int i = start; i <= stop; i += (stop - start) / 10) {
+        for (int i = start; i <= stop; i += Math.max(1, (stop - start) / 10)) {
             StdDraw.text(i, -1.0, String.valueOf(i)); // Affichage des valeurs sur l'axe x
             StdDraw.line(i, -0.02, i, 0.02); // Affichage des traits de graduation sur l'axe x
         }
@@ -190,55 +732,200 @@ public class DosSend {
         StdDraw.setPenColor(StdDraw.BLUE); // Définition de la couleur du stylo
         StdDraw.setPenRadius(0.005); // Définition de l'épaisseur du trait
         StdDraw.line(start, 0, stop, 0); // Dessin de la ligne horizontale bleue
-
-        if (mode.equals("line")) {
-            // Affichage du signal sous forme de ligne
-            for (int i = start; i < stop - 1; i++) {
-                StdDraw.line(i, sig[i], (double) i + 1, sig[i + 1]); // Dessin de la ligne entre deux points successifs
-            }
-        } else if (mode.equals("point")) {
-            // Affichage du signal sous forme de points
-            for (int i = start; i < stop; i++) {
-                StdDraw.point(i, sig[i]); // Dessin d'un point pour chaque échantillon du signal
-            }
-        } else {
-            System.out.println("Mode non pris en charge"); // Affichage d'un message si le mode n'est pas reconnu
-        }
     }
 
     /**
-     * Display signals in a window
+     * Build the envelope of the modulated signal : the value of the bit of
+     * each sample
      *
-     * @param listOfSigs a list of the signals to display
-     * @param start      the first sample to display
-     * @param stop       the last sample to display
-     * @param mode       "line" or "point"
-     * @param title      the title of the window
+     * @param bits the modulated data
+     * @return one value (0 or 1) per sample
      */
-    public static void displaySig(List<double[]> listOfSigs, int start, int stop, String mode, String title) {
-        // À compléter - Affichage des signaux dans une fenêtre graphique
+    public double[] bitEnvelope(byte[] bits) {
+        double[] envelope = new double[symbolStart(bits.length)];
+        for (int i = 0; i < bits.length; i++) {
+            Arrays.fill(envelope, symbolStart(i), symbolStart(i + 1), bits[i]);
+        }
+        return envelope;
     }
 
     // Le reste du code reste inchangé
     public static void main(String[] args) {
+        // lecture des options
+        boolean compress = false; // -z : compression de la charge utile avant modulation
+        String play = null; // --play [-] : diffusion directe sur la carte son ou en PCM brut sur stdout
+        int bufferSize = DEFAULT_BUFFER; // --buffer n : taille du tampon de diffusion
+        String output = "DosOok_message.wav"; // fichier de sortie, "-" pour un wav sur stdout
+        String png = null; // --png fichier : tracé enregistré en image, sans fenêtre
+        boolean metrics = false; // --metrics : mesures des étapes en JSON sur stderr
+        String precision = DosDsp.DOUBLE; // --precision double|float|fixed : précision de la modulation
+        int rate = 44100; // --rate n : fréquence d'échantillonnage du signal (8000, 48000, 96000...)
+        double rolloff = 0; // --shape r : transitions en cosinus surélevé sur r symbole (0 à 1)
+        boolean append = false; // --append : message ajouté à la fin du fichier wav existant
+        for (int i = 0; i < args.length; i++) {
+            try {
+                if (args[i].equals("-") || !args[i].startsWith("-")) {
+                    output = args[i];
+                } else if (args[i].equals("-z")) {
+                    compress = true;
+                } else if (args[i].equals("--play")) {
+                    play = i + 1 < args.length && args[i + 1].equals("-") ? args[++i] : "";
+                } else if (args[i].equals("--buffer") && i + 1 < args.length) {
+                    bufferSize = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--png") && i + 1 < args.length) {
+                    png = args[++i];
+                    DosPlot.enableHeadless();
+                } else if (args[i].equals("--metrics")) {
+                    metrics = true;
+                    DosMetrics.enable();
+                } else if (args[i].equals("--jmx")) {
+                    DosMetrics.enableJmx();
+                } else if (args[i].equals("--precision") && i + 1 < args.length) {
+                    precision = args[++i];
+                } else if (args[i].equals("--rate") && i + 1 < args.length) {
+                    rate = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--shape") && i + 1 < args.length) {
+                    rolloff = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--append")) {
+                    append = true;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Option invalide : " + args[i - 1] + " " + args[i]); // nombre attendu
+                return;
+            }
+        }
+        if (append && (play != null || output.equals("-"))) {
+            System.out.println("--append demande un fichier wav de sortie");
+            return;
+        }
+        if (bufferSize < 1) {
+            System.out.println("--buffer doit être au moins 1");
+            return;
+        }
+        if (rolloff < 0 || rolloff > 1) {
+            System.out.println("Arrondi des transitions hors de [0, 1] : " + rolloff);
+            return;
+        }
+        if (rate <= 2 * DosRead.FP) { // Shannon : la porteuse FP doit rester sous la moitié de la fréquence
+            System.out.println("Fréquence d'échantillonnage trop basse pour la porteuse : " + rate + " Hz");
+            return;
+        }
+        if (!DosDsp.isPrecision(precision)) {
+            System.out.println("Précision inconnue : " + precision);
+            return;
+        }
+        if (play != null) {
+            playMain(compress, play.equals("-"), bufferSize, rate, rolloff);
+            if (metrics) {
+                DosMetrics.dump(System.err);
+            }
+            return;
+        }
+
         // créé un objet DosSend
-        DosSend dosSend = new DosSend("DosOok_message.wav");
+        DosSend dosSend = new DosSend(output);
+        dosSend.compress = compress;
+        dosSend.precision = precision;
+        dosSend.FECH = rate;
+        dosSend.rolloff = rolloff;
+        dosSend.append = append;
         // lit le texte à envoyer depuis l'entrée standard
-        // et calcule la durée de l'audio correspondant
-        dosSend.duree = (dosSend.readTextData() + (double) dosSend.START_SEQ.length / 8) * 8.0 / dosSend.BAUDS;
-        // génère le signal modulé après avoir converti les données en bits
-        dosSend.modulateData(dosSend.charToBits(dosSend.dataChar));
+        dosSend.readTextData();
+        // construit la trame (drapeau, longueur, charge utile) et la convertit en bits
+        byte[] bits = dosSend.charToBits(dosSend.buildFrame(dosSend.dataChar));
+        // calcule la durée de l'audio correspondant
+        dosSend.duree = (double) bits.length / dosSend.BAUDS;
+        if (output.equals("-")) {
+            // wav diffusé sur stdout au fil de la modulation, statistiques sur stderr
+            dosSend.writeWavHeader();
+            if (dosSend.outStream == null) {
+                return; // fichier derrière stdout impossible à écrire
+            }
+            dosSend.streamData(bits, dosSend.outStream, bufferSize);
+            try {
+                dosSend.closeWav();
+            } catch (IOException e) {
+                System.err.println("Erreur d'écriture : " + e.getMessage());
+            }
+            dosSend.printInfo(System.err, dosSend.samplesStreamed);
+            if (metrics) {
+                DosMetrics.dump(System.err);
+            }
+            return;
+        }
+        // génère le signal modulé
+        dosSend.modulateData(bits);
         // écrit l'entête du fichier wav
         dosSend.writeWavHeader();
+        if (dosSend.outStream == null) {
+            return; // fichier impossible à créer ou à compléter
+        }
         // écrit les données audio dans le fichier wav
         dosSend.writeNormalizeWavData();
         // affiche les caractéristiques du signal dans la console
-        System.out.println("Message : " + String.valueOf(dosSend.dataChar));
-        System.out.println("\tNombre de symboles : " + dosSend.dataChar.length);
-        System.out.println("\tNombre d'échantillons : " + dosSend.dataMod.length);
-        System.out.println("\tDurée : " + dosSend.duree + " s");
-        System.out.println();
-        // exemple d'affichage du signal modulé dans une fenêtre graphique
-        displaySig(dosSend.dataMod, 1000, 3000, "line", "Signal modulé");
+        dosSend.printInfo(System.out, dosSend.dataLength);
+        if (append && dosSend.wav != null) {
+            System.out.println("Fichier " + output + " : " + (double) dosSend.wav.dataBytes() / dosSend.wav.blockAlign
+                    / dosSend.FECH + " s au total");
+        }
+        if (metrics) {
+            DosMetrics.dump(System.err);
+        }
+        // exemple d'affichage du signal modulé et des bits dans une fenêtre graphique
+        displaySig(List.of(dosSend.signal(), dosSend.bitEnvelope(bits)), List.of("Signal modulé", "Bits"),
+                1000, 3000, "line", "Signal modulé");
+        if (png != null) {
+            DosPlot.savePlot(png);
+        }
+    }
+
+    /**
+     * Print the characteristics of the signal
+     *
+     * @param out     the stream to print in
+     * @param samples the number of samples of the signal
+     */
+    void printInfo(PrintStream out, long samples) {
+        out.println("Message : " + String.valueOf(dataChar));
+        out.println("\tNombre de symboles : " + dataChar.length);
+        out.println("\tCharge utile : " + payloadSize + " octets"
+                + (payloadFlag == FLAG_DEFLATE ? " (compressée)" : ""));
+        out.println("\tNombre d'échantillons : " + samples);
+        out.println("\tDurée : " + duree + " s");
+        out.println();
+    }
+
+    /**
+     * Read the message from stdin and stream it without writing a wav file.
+     * The statistics go to stderr so that stdout can carry the raw PCM.
+     *
+     * @param compress   compress the payload before modulation
+     * @param toStdout   write raw PCM on stdout instead of playing it
+     * @param bufferSize the number of samples written at once
+     * @param rate       the sample rate of the signal
+     * @param rolloff    the length of the transitions, in symbols
+     */
+    static void playMain(boolean compress, boolean toStdout, int bufferSize, int rate, double rolloff) {
+        DosSend dosSend = new DosSend();
+        dosSend.FECH = rate;
+        dosSend.rolloff = rolloff;
+        dosSend.compress = compress;
+        dosSend.readTextData();
+        byte[] bits = dosSend.charToBits(dosSend.buildFrame(dosSend.dataChar));
+        dosSend.duree = (double) bits.length / dosSend.BAUDS;
+        if (toStdout) {
+            dosSend.streamData(bits, System.out, bufferSize);
+        } else {
+            try {
+                dosSend.playData(bits, bufferSize);
+            } catch (LineUnavailableException | IllegalArgumentException e) {
+                System.err.println("Sortie audio indisponible : " + e.getMessage());
+                return;
+            }
+        }
+        System.err.println("Message : " + String.valueOf(dosSend.dataChar));
+        System.err.println("\tNombre d'échantillons : " + dosSend.samplesStreamed);
+        System.err.println("\tDurée : " + dosSend.duree + " s");
+        System.err.println("\tTampon : " + bufferSize + " échantillons, " + dosSend.underruns + " sous-alimentation(s)");
     }
 }
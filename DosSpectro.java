@@ -0,0 +1,89 @@
+import java.io.IOException;
+
+/**
+ * Spectrogram of a wav file, to check the carrier frequency (FP) and spot
+ * interferences. The file is memory-mapped and the STFT is computed in
+ * parallel, reduced to one column per pixel.
+ */
+public class DosSpectro {
+
+    static final int WIDTH = 1200; // largeur de la fenêtre en pixels
+    static final int HEIGHT = 600; // hauteur de la fenêtre en pixels
+    static final int FRAMES_PER_COLUMN = 16; // trames calculées au plus par colonne
+    static final double RANGE = 80; // dynamique affichée en dB
+
+    /**
+     * Usage: java DosSpectro file.wav [--fft 1024] [--max-freq 5000] [--png file.png]
+     */
+    public static void main(String[] args) {
+        String path = null;
+        int fftSize = 1024; // taille de la FFT (résolution en fréquence)
+        double maxFreq = 5000; // fréquence max affichée
+        String png = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--fft") && i + 1 < args.length) {
+                fftSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--max-freq") && i + 1 < args.length) {
+                maxFreq = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--png") && i + 1 < args.length) {
+                png = args[++i];
+                DosPlot.enableHeadless();
+            } else {
+                path = args[i];
+            }
+        }
+        if (path == null) {
+            System.out.println("Usage: java DosSpectro <input_wav_file> [--fft 1024] [--max-freq 5000] [--png plot.png]");
+            return;
+        }
+
+        if (fftSize < 2 || Integer.bitCount(fftSize) != 1) {
+            System.out.println("Erreur : la taille de la FFT doit être une puissance de 2 (" + fftSize + ")");
+            return;
+        }
+
+        MappedWav wav;
+        try {
+            wav = new MappedWav(path);
+        } catch (IOException e) {
+            System.out.println("Erreur de lecture : " + e.getMessage());
+            return;
+        }
+
+        // Décalage entre trames : recouvrement de 75 %, moins pour les longs fichiers
+        int hop = (int) Math.max(fftSize / 4, (long) wav.length() / ((long) WIDTH * FRAMES_PER_COLUMN));
+        maxFreq = Math.min(maxFreq, wav.sampleRate / 2.0);
+        int bins = Math.max(1, (int) Math.round(maxFreq * fftSize / wav.sampleRate));
+        bins = Math.min(bins, fftSize / 2);
+
+        long t0 = System.nanoTime();
+        Stft stft = new Stft(fftSize, hop);
+        float[][] db = stft.columns(wav, WIDTH, bins);
+        long t1 = System.nanoTime();
+        System.out.printf("Spectrogramme : %d trames, %d colonnes, %d raies, %.2f s%n",
+                stft.frameCount(wav.length()), db.length, bins, (t1 - t0) / 1e9);
+
+        // Fenêtre avec des marges pour les graduations
+        double duration = (double) wav.length() / wav.sampleRate;
+        StdDraw.setCanvasSize(WIDTH, HEIGHT);
+        StdDraw.setTitle("Spectrogramme - " + path);
+        StdDraw.enableDoubleBuffering();
+        StdDraw.setXscale(-0.08 * duration, 1.03 * duration);
+        StdDraw.setYscale(-0.1 * maxFreq, 1.04 * maxFreq);
+        DosPlot.drawSpectrogram(db, 0, duration, 0, maxFreq, RANGE);
+
+        StdDraw.setPenColor(StdDraw.BLACK);
+        for (int k = 0; k <= 10; k++) {
+            double t = duration * k / 10;
+            StdDraw.text(t, -0.05 * maxFreq, String.format("%.2f s", t)); // Graduations du temps
+        }
+        for (int k = 0; k <= 5; k++) {
+            double f = maxFreq * k / 5;
+            StdDraw.text(-0.04 * duration, f, String.format("%.0f Hz", f)); // Graduations des fréquences
+        }
+        StdDraw.show();
+        if (png != null) {
+            DosPlot.savePlot(png);
+        }
+    }
+}
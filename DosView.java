@@ -0,0 +1,181 @@
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+
+/**
+ * Interactive viewer for wav files of any length.
+ * The file is memory-mapped and summarized once in a min/max pyramid, then
+ * each frame only reads the pyramid (or, when zoomed in, the visible
+ * samples), so zooming and panning stay responsive on multi-hour captures.
+ * <p>
+ * Controls: drag with the mouse or use the left/right arrows to pan,
+ * '+' and '-' to zoom around the mouse, '0' to show the whole file,
+ * 'q' to quit.
+ */
+public class DosView {
+
+    static final int WIDTH = 1200; // largeur de la fenêtre en pixels
+    static final int HEIGHT = 500; // hauteur de la fenêtre en pixels
+    static final int BASE_LEVEL = 6; // pyramide à partir de blocs de 64 échantillons
+    static final int MIN_SAMPLES = 16; // plus petite plage affichée
+    static final int FRAME_MS = 20; // période de rafraîchissement (50 images/s au plus)
+
+    final MappedWav wav; // échantillons du fichier, projetés en mémoire
+    final MinMaxPyramid pyramid; // résumé min/max du fichier
+    double start; // premier échantillon affiché
+    double stop; // dernier échantillon affiché
+
+    /**
+     * Constructor
+     *
+     * @param path the path of the wav file to view
+     * @throws IOException if the file cannot be read
+     */
+    public DosView(String path) throws IOException {
+        wav = new MappedWav(path);
+        pyramid = new MinMaxPyramid(wav, BASE_LEVEL);
+        start = 0;
+        stop = Math.max(MIN_SAMPLES, wav.length() - 1);
+    }
+
+    /**
+     * Zoom around a sample
+     *
+     * @param factor the new width divided by the current width
+     * @param center the sample that stays at the same place
+     */
+    public void zoom(double factor, double center) {
+        double width = Math.max(MIN_SAMPLES, (stop - start) * factor);
+        double ratio = (center - start) / (stop - start);
+        start = center - ratio * width;
+        stop = start + width;
+        clamp();
+    }
+
+    /**
+     * Move the displayed range
+     *
+     * @param delta the number of samples to move by
+     */
+    public void pan(double delta) {
+        start += delta;
+        stop += delta;
+        clamp();
+    }
+
+    /**
+     * Keep the displayed range inside the file
+     */
+    private void clamp() {
+        double width = Math.min(stop - start, Math.max(MIN_SAMPLES, wav.length() - 1));
+        if (start < 0) {
+            start = 0;
+        }
+        stop = start + width;
+        if (stop > wav.length() - 1) {
+            stop = Math.max(width, wav.length() - 1);
+            start = stop - width;
+        }
+    }
+
+    /**
+     * Draw the displayed range in the window
+     */
+    public void draw() {
+        int a = (int) start;
+        int b = Math.min((int) Math.ceil(stop), wav.length() - 1);
+        StdDraw.clear();
+        StdDraw.setXscale(a, b); // Définition de l'échelle sur l'axe x
+        StdDraw.setYscale(-1.1, 1.1); // Définition de l'échelle sur l'axe y
+
+        // Graduations de l'axe x en secondes
+        StdDraw.setPenColor(StdDraw.BLACK);
+        StdDraw.setPenRadius(0.002);
+        for (int k = 0; k <= 10; k++) {
+            double x = a + (b - a) * k / 10.0;
+            StdDraw.text(x, -1.0, String.format("%.3f s", x / wav.sampleRate));
+            StdDraw.line(x, -0.02, x, 0.02);
+        }
+
+        // Ligne bleue au milieu puis signal
+        StdDraw.setPenColor(StdDraw.BLUE);
+        StdDraw.line(a, 0, b, 0);
+        if (b > a) {
+            DosPlot.drawSignal(pyramid, a, b, "line", WIDTH);
+        }
+        StdDraw.show();
+    }
+
+    /**
+     * Run the interactive loop until 'q' is typed
+     */
+    public void run() {
+        StdDraw.setCanvasSize(WIDTH, HEIGHT);
+        StdDraw.setTitle("DosView - " + wav.length() + " échantillons à " + wav.sampleRate + " Hz");
+        StdDraw.enableDoubleBuffering();
+
+        boolean dirty = true; // l'affichage doit être refait
+        boolean dragging = false;
+        double anchor = 0; // échantillon saisi par la souris
+        double lastMouse = 0;
+        while (true) {
+            // Clavier
+            while (StdDraw.hasNextKeyTyped()) {
+                char c = StdDraw.nextKeyTyped();
+                double center = StdDraw.mouseX() >= start && StdDraw.mouseX() <= stop
+                        ? StdDraw.mouseX() : (start + stop) / 2;
+                if (c == '+' || c == '=') {
+                    zoom(0.5, center);
+                } else if (c == '-') {
+                    zoom(2, center);
+                } else if (c == '0') {
+                    start = 0;
+                    stop = Math.max(MIN_SAMPLES, wav.length() - 1);
+                    clamp();
+                } else if (c == 'q') {
+                    System.exit(0);
+                }
+                dirty = true;
+            }
+            if (StdDraw.isKeyPressed(KeyEvent.VK_LEFT)) {
+                pan(-(stop - start) / 20);
+                dirty = true;
+            } else if (StdDraw.isKeyPressed(KeyEvent.VK_RIGHT)) {
+                pan((stop - start) / 20);
+                dirty = true;
+            }
+
+            // Souris : l'échantillon saisi reste sous le pointeur
+            if (StdDraw.isMousePressed()) {
+                double mouse = StdDraw.mouseX();
+                if (!dragging) {
+                    dragging = true;
+                    anchor = mouse;
+                } else if (mouse != lastMouse) {
+                    pan(anchor - mouse);
+                    dirty = true;
+                }
+                lastMouse = mouse;
+            } else {
+                dragging = false;
+            }
+
+            if (dirty) {
+                draw();
+                dirty = false;
+            }
+            StdDraw.pause(FRAME_MS);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: java DosView <input_wav_file>");
+            return;
+        }
+        try {
+            new DosView(args[0]).run();
+        } catch (IOException e) {
+            System.out.println("Erreur de lecture : " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,349 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+/**
+ * Inner loops of the double path of DosRead: PCM conversion, rectifier,
+ * moving average window sum and per-symbol mean.
+ * <p>
+ * This class is the scalar version. When the JVM is started with
+ * --add-modules jdk.incubator.vector and VectorKernels (in simd/, compiled
+ * separately since it needs the incubator module) is on the class path,
+ * select() can use its Vector API loops instead, kernel by kernel: only the
+ * ones listed in -Ddosook.simd (for example
+ * -Ddosook.simd=movingAverage,symbolMeans) are vectorial, the others stay
+ * scalar, and -Ddosook.simd=true takes them all.
+ * <p>
+ * By default no kernel is vectorial: DosRead calls each kernel once per
+ * file, and the Vector API loops are only fast once compiled by C2. Until
+ * then they box every vector, so a single call is several times slower than
+ * the scalar loop even on minutes of signal. main measures both the first
+ * call and the compiled speed of each kernel.
+ */
+public class DspKernels {
+
+    static final String VECTOR_CLASS = "VectorKernels"; // implémentation vectorielle, chargée si possible
+    static final String[] KERNELS = {"toDouble", "rectify", "movingAverage", "symbolMeans"}; // noms pour -Ddosook.simd
+    static final String[] STAGES = {"conversion PCM", "redressement", "passe-bas", "moyenne par symbole"};
+    static final String VECTOR_DEFAULT = ""; // noyaux plus rapides en vectoriel dès le premier appel (java DspKernels)
+
+    /**
+     * Choose the kernels at run time: for each kernel listed in the
+     * dosook.simd property, the Vector API one if it can be loaded, the
+     * scalar one otherwise
+     *
+     * @return the kernels to use
+     */
+    public static DspKernels select() {
+        String simd = System.getProperty("dosook.simd", VECTOR_DEFAULT);
+        boolean[] use = new boolean[KERNELS.length];
+        boolean any = false;
+        for (int k = 0; k < KERNELS.length; k++) {
+            use[k] = simd.equals("true") || ("," + simd + ",").contains("," + KERNELS[k] + ",");
+            any |= use[k];
+        }
+        DspKernels vector = any ? loadVector() : null;
+        return vector == null ? new DspKernels() : new Mixed(vector, use);
+    }
+
+    /**
+     * @return the Vector API kernels, or null if the class or the
+     *         jdk.incubator.vector module is missing
+     */
+    static DspKernels loadVector() {
+        try {
+            return (DspKernels) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // Classe absente ou module jdk.incubator.vector non ajouté : boucles scalaires
+        }
+    }
+
+    /**
+     * Vector kernels for some of the loops, scalar ones for the others
+     */
+    static class Mixed extends DspKernels {
+        final DspKernels vector;
+        final boolean[] use; // noyau vectoriel retenu, dans l'ordre de KERNELS
+
+        Mixed(DspKernels vector, boolean[] use) {
+            this.vector = vector;
+            this.use = use;
+        }
+
+        @Override
+        public String name() {
+            StringBuilder stages = new StringBuilder();
+            for (int k = 0; k < KERNELS.length; k++) {
+                if (use[k]) {
+                    stages.append(stages.length() == 0 ? "" : ", ").append(STAGES[k]);
+                }
+            }
+            return stages.length() == 0 ? super.name() : vector.name() + " : " + stages;
+        }
+
+        @Override
+        public void toDouble(ByteBuffer pcm, double[] dest, int n) {
+            if (use[0]) {
+                vector.toDouble(pcm, dest, n);
+            } else {
+                super.toDouble(pcm, dest, n);
+            }
+        }
+
+        @Override
+        public void rectify(double[] audio, int n) {
+            if (use[1]) {
+                vector.rectify(audio, n);
+            } else {
+                super.rectify(audio, n);
+            }
+        }
+
+        @Override
+        public void movingAverage(double[] in, double[] out, int n, int window) {
+            if (use[2]) {
+                vector.movingAverage(in, out, n, window);
+            } else {
+                super.movingAverage(in, out, n, window);
+            }
+        }
+
+        @Override
+        public void symbolMeans(double[] audio, int n, double period, double[] means) {
+            if (use[3]) {
+                vector.symbolMeans(audio, n, period, means);
+            } else {
+                super.symbolMeans(audio, n, period, means);
+            }
+        }
+    }
+
+    /**
+     * @return the name of the implementation, for the statistics
+     */
+    public String name() {
+        return "scalaire";
+    }
+
+    /**
+     * Convert 16 bits little endian PCM to doubles between -1 and 1
+     *
+     * @param pcm  the PCM bytes, from index 0, in little endian order
+     * @param dest the array to fill
+     * @param n    the number of samples
+     */
+    public void toDouble(ByteBuffer pcm, double[] dest, int n) {
+        for (int i = 0; i < n; i++) {
+            dest[i] = pcm.getShort(2 * i) / 32768.0; // Conversion little-endian et normalisation entre -1 et 1
+        }
+    }
+
+    /**
+     * Reverse the negative values
+     *
+     * @param audio the signal
+     * @param n     the number of samples
+     */
+    public void rectify(double[] audio, int n) {
+        for (int i = 0; i < n; i++) {
+            if (audio[i] < 0) {
+                audio[i] = -audio[i]; // Inversion des valeurs négatives
+            }
+        }
+    }
+
+    /**
+     * Moving average over the last window samples (shorter window for the
+     * first samples)
+     *
+     * @param in     the signal
+     * @param out    the filtered signal (not in)
+     * @param n      the number of samples
+     * @param window the number of samples to average
+     */
+    public void movingAverage(double[] in, double[] out, int n, int window) {
+        for (int i = 0; i < n; i++) { // Parcourt les échantillons audio
+            double sum = 0.0; // Initialise la somme pour calculer la moyenne
+            int start = Math.max(0, i - window + 1); // Calcul de l'indice de début de la fenêtre
+            int end = i + 1; // Calcul de l'indice de fin de la fenêtre
+
+            for (int j = start; j < end; j++) { // Boucle dans la fenêtre
+                sum += in[j]; // Somme des échantillons dans la fenêtre
+            }
+
+            out[i] = sum / (double) (end - start); // Calcul de la moyenne et stockage dans le tableau filtré
+        }
+    }
+
+    /**
+     * First sample of a symbol, with a fractional symbol clock: when the
+     * period is not an integer (8000 Hz at 300 bauds for example) the
+     * symbols are alternately one sample shorter or longer, without drift.
+     * DosSend and OokEncoder cut the signal they emit with this same
+     * function, so that sender and receiver agree on every boundary.
+     *
+     * @param i      the index of the symbol
+     * @param period the number of samples by symbol
+     * @return the index of its first sample
+     */
+    public static int symbolStart(int i, double period) {
+        return (int) Math.round(i * period);
+    }
+
+    /**
+     * @param n      a number of samples
+     * @param period the number of samples by symbol
+     * @return the number of complete symbols in n samples
+     */
+    public static int symbolCount(int n, double period) {
+        int count = (int) (n / period);
+        return symbolStart(count, period) > n ? count - 1 : count;
+    }
+
+    /**
+     * Mean of the samples of each symbol
+     *
+     * @param audio  the signal
+     * @param n      the number of samples
+     * @param period the number of samples by symbol, not necessarily an integer
+     * @param means  the mean of each of the symbolCount(n, period) symbols
+     */
+    public void symbolMeans(double[] audio, int n, double period, double[] means) {
+        int count = symbolCount(n, period);
+        for (int i = 0; i < count; i++) { // Parcourt les symboles
+            int start = symbolStart(i, period); // Début de la période
+            int end = symbolStart(i + 1, period); // Fin de la période
+            double sum = 0;
+            for (int j = start; j < end; j++) { // Parcourt les échantillons
+                sum += audio[j]; // Somme des échantillons
+            }
+            means[i] = sum / (end - start);
+        }
+    }
+
+    /**
+     * Benchmark of the vector kernels against the scalar ones on a noisy
+     * signal, kernel by kernel, with the largest difference between their
+     * results and the value of -Ddosook.simd that keeps the faster ones.
+     * The first call of each kernel is timed on its own, since it is the
+     * only one in DosRead. Then each kernel is run until its last WINDOW
+     * times are within 5 % of each other (compilation at run time
+     * finished), and the median of these times gives the compiled speed.
+     * Usage: java --add-modules jdk.incubator.vector -cp .:simd DspKernels [seconds]
+     */
+    public static void main(String[] args) {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10; // durée du signal de test
+        DspKernels vector = loadVector();
+        if (vector == null) {
+            System.out.println("Noyaux vectoriels indisponibles : lancer avec --add-modules jdk.incubator.vector et simd/ dans le class path");
+            return;
+        }
+        System.out.println("Noyaux comparés : scalaire et " + vector.name() + ", " + seconds + " s de signal");
+
+        int n = seconds * 44100;
+        int period = 44100 / DosRead.BAUDS;
+        int count = symbolCount(n, period);
+        ByteBuffer pcm = ByteBuffer.allocate(2 * n).order(ByteOrder.LITTLE_ENDIAN);
+        java.util.Random random = new java.util.Random(1);
+        for (int i = 0; i < n; i++) {
+            pcm.putShort(2 * i, (short) (16000 * Math.sin(i * 0.142) + 3000 * random.nextGaussian()));
+        }
+        DspKernels[] kernels = {new DspKernels(), vector};
+
+        // Premier appel de chaque noyau, dans l'ordre de DosRead
+        double[][] audio = new double[2][n];
+        double[][] rectified = new double[2][n];
+        double[][] filtered = new double[2][n];
+        double[][] means = new double[2][count];
+        long[][] first = new long[2][KERNELS.length];
+        for (int k = 0; k < 2; k++) {
+            long t0 = System.nanoTime();
+            kernels[k].toDouble(pcm, audio[k], n);
+            long t1 = System.nanoTime();
+            System.arraycopy(audio[k], 0, rectified[k], 0, n);
+            long t2 = System.nanoTime();
+            kernels[k].rectify(rectified[k], n);
+            long t3 = System.nanoTime();
+            kernels[k].movingAverage(rectified[k], filtered[k], n, DosRead.LP_FILTER);
+            long t4 = System.nanoTime();
+            kernels[k].symbolMeans(filtered[k], n, period, means[k]);
+            long t5 = System.nanoTime();
+            first[k] = new long[] {t1 - t0, t3 - t2, t4 - t3, t5 - t4};
+        }
+        double[] diff = {maxDiff(audio[0], audio[1], n), maxDiff(rectified[0], rectified[1], n),
+                maxDiff(filtered[0], filtered[1], n), maxDiff(means[0], means[1], count)};
+
+        // Vitesse une fois compilés, sur les entrées calculées par les boucles scalaires
+        double[][] out = new double[2][n];
+        StringBuilder faster = new StringBuilder();
+        System.out.printf("%-20s %27s %35s %12s%n", "", "1er appel (ms)", "compilé (Mé/s)", "");
+        System.out.printf("%-20s %9s %9s %7s %9s %9s %7s %6s %12s%n", "Étape", "scalaire", "vectoriel", "gain",
+                "scalaire", "vectoriel", "gain", "tours", "écart max");
+        for (int s = 0; s < KERNELS.length; s++) {
+            double[] rate = new double[2];
+            int rounds = 0;
+            for (int k = 0; k < 2; k++) {
+                long[] times = new long[WINDOW];
+                int round = 0;
+                do {
+                    if (s == 1) {
+                        System.arraycopy(audio[0], 0, out[k], 0, n); // redressement en place : même entrée à chaque tour
+                    }
+                    long t0 = System.nanoTime();
+                    switch (s) {
+                        case 0: kernels[k].toDouble(pcm, out[k], n); break;
+                        case 1: kernels[k].rectify(out[k], n); break;
+                        case 2: kernels[k].movingAverage(rectified[0], out[k], n, DosRead.LP_FILTER); break;
+                        default: kernels[k].symbolMeans(filtered[0], n, period, out[k]);
+                    }
+                    times[round++ % WINDOW] = System.nanoTime() - t0;
+                } while (round < MAX_ROUNDS && !settled(times, round));
+                java.util.Arrays.sort(times);
+                rate[k] = n / (times[WINDOW / 2] / 1e9) / 1e6;
+                rounds = Math.max(rounds, round);
+            }
+            double firstGain = (double) first[0][s] / first[1][s];
+            if (firstGain > 1 && rate[1] > rate[0]) {
+                faster.append(faster.length() == 0 ? "" : ",").append(KERNELS[s]);
+            }
+            System.out.printf(Locale.ROOT, "%-20s %9.1f %9.1f %6.2fx %9.1f %9.1f %6.2fx %6d %12.3g%n", STAGES[s],
+                    first[0][s] / 1e6, first[1][s] / 1e6, firstGain, rate[0], rate[1], rate[1] / rate[0], rounds,
+                    diff[s]);
+        }
+        System.out.println("Noyaux vectoriels plus rapides dès le premier appel : -Ddosook.simd="
+                + (faster.length() == 0 ? "false" : faster) + " (défaut : "
+                + (VECTOR_DEFAULT.isEmpty() ? "aucun" : VECTOR_DEFAULT) + ")");
+    }
+
+    static final int WINDOW = 5; // nombre de mesures consécutives qui doivent concorder
+    static final int MAX_ROUNDS = 200; // limite si les mesures ne se stabilisent pas
+
+    /**
+     * @param times the last WINDOW times, in a circular order
+     * @param round the number of times measured
+     * @return true when WINDOW times were measured and are within 5 % of each other
+     */
+    private static boolean settled(long[] times, int round) {
+        if (round < WINDOW) {
+            return false;
+        }
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (long t : times) {
+            min = Math.min(min, t);
+            max = Math.max(max, t);
+        }
+        return max - min <= min / 20;
+    }
+
+    /**
+     * @return the largest difference between the first n values of two arrays
+     */
+    private static double maxDiff(double[] a, double[] b, int n) {
+        double max = 0;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, Math.abs(a[i] - b[i]));
+        }
+        return max;
+    }
+}
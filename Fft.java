@@ -0,0 +1,77 @@
+/**
+ * Plan of a radix-2 fast Fourier transform of a given size.
+ * The twiddle factors and the bit-reversal permutation are computed once
+ * in the constructor; a plan is immutable and can be shared by several
+ * threads, each one transforming its own arrays.
+ */
+public class Fft {
+
+    final int size; // taille de la transformée (puissance de 2)
+    private final double[] cos; // facteurs de rotation, partie réelle
+    private final double[] sin; // facteurs de rotation, partie imaginaire
+    private final int[] reversed; // permutation par inversion des bits
+
+    /**
+     * Constructor
+     *
+     * @param size the size of the transform, a power of 2
+     */
+    public Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("la taille de la FFT doit être une puissance de 2 : " + size);
+        }
+        this.size = size;
+        cos = new double[size / 2];
+        sin = new double[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            cos[k] = Math.cos(-2 * Math.PI * k / size);
+            sin[k] = Math.sin(-2 * Math.PI * k / size);
+        }
+        reversed = new int[size];
+        int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    /**
+     * Compute the forward transform in place
+     *
+     * @param re the real parts, size values
+     * @param im the imaginary parts, size values
+     */
+    public void transform(double[] re, double[] im) {
+        // Permutation des entrées
+        for (int i = 0; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        // Papillons, des blocs de 2 jusqu'aux blocs de size
+        for (int len = 2; len <= size; len <<= 1) {
+            int half = len >> 1;
+            int step = size / len;
+            for (int i = 0; i < size; i += len) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = sin[k * step];
+                    int a = i + k;
+                    int b = a + half;
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
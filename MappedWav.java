@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only memory-mapped view of the samples of a 16 bits PCM wav file.
+ * Only the pages of the samples actually read are loaded by the system, so
+ * any range of a multi-hour recording can be accessed without reading the
+ * whole file. Multichannel files are read on their first channel.
+ */
+public class MappedWav implements MinMaxPyramid.Source {
+
+    private static final long SEGMENT = 1L << 30; // taille max d'une projection en mémoire
+
+    int sampleRate; // fréquence d'échantillonnage
+    int channels; // nombre de voies
+    int blockAlign; // octets par trame (toutes voies confondues)
+    private final int length; // nombre de trames
+    private final long segmentBytes; // taille des segments, multiple de blockAlign
+    private final MappedByteBuffer[] segments; // projections successives du bloc de données
+
+    /**
+     * Open a wav file and map its data chunk
+     *
+     * @param path the path of the wav file
+     * @throws IOException if the file cannot be read or is not a 16 bits PCM wav file
+     */
+    public MappedWav(String path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            String magic = ascii(header, 0);
+            if (!(magic.equals("RIFF") || magic.equals("RF64")) || !ascii(header, 8).equals("WAVE")) {
+                throw new IOException("fichier wav invalide : " + path);
+            }
+
+            // Parcours des blocs jusqu'au bloc de données
+            long pos = 12;
+            long dataOffset = -1;
+            long dataSize = 0;
+            long ds64DataSize = -1; // taille sur 64 bits d'un fichier RF64
+            int bits = 0;
+            ByteBuffer chunk = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            while (pos + 8 <= channel.size()) {
+                chunk.clear();
+                channel.read(chunk, pos);
+                String id = ascii(chunk, 0);
+                long size = chunk.getInt(4) & 0xFFFFFFFFL;
+                if (id.equals("ds64")) {
+                    ds64DataSize = chunk.getLong(16);
+                } else if (id.equals("fmt ")) {
+                    channels = chunk.getShort(10);
+                    sampleRate = chunk.getInt(12);
+                    blockAlign = chunk.getShort(20);
+                    bits = chunk.getShort(22);
+                } else if (id.equals("data")) {
+                    dataOffset = pos + 8;
+                    if (size == 0xFFFFFFFFL && ds64DataSize >= 0) {
+                        size = ds64DataSize; // RF64 : la vraie taille est dans ds64
+                    }
+                    // Taille inconnue (wav diffusé en flux) : jusqu'à la fin du fichier
+                    dataSize = size == 0 || size == 0xFFFFFFFFL ? channel.size() - dataOffset
+                            : Math.min(size, channel.size() - dataOffset);
+                    break;
+                }
+                pos += 8 + size + (size & 1); // Blocs alignés sur 2 octets
+            }
+            if (dataOffset < 0 || bits != 16) {
+                throw new IOException("seuls les wav PCM 16 bits sont pris en charge : " + path);
+            }
+
+            long frames = dataSize / blockAlign;
+            if (frames > Integer.MAX_VALUE) {
+                throw new IOException("fichier trop long : " + frames + " échantillons");
+            }
+            length = (int) frames;
+            segmentBytes = SEGMENT / blockAlign * blockAlign;
+            int count = (int) ((frames * blockAlign + segmentBytes - 1) / segmentBytes);
+            segments = new MappedByteBuffer[count];
+            for (int k = 0; k < count; k++) {
+                long offset = k * segmentBytes;
+                long size = Math.min(segmentBytes, frames * blockAlign - offset);
+                segments[k] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + offset, size);
+                segments[k].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    /**
+     * Read 4 ASCII characters of a buffer
+     */
+    private static String ascii(ByteBuffer buffer, int offset) {
+        byte[] id = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            id[i] = buffer.get(offset + i);
+        }
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public double get(int i) {
+        long byteIndex = (long) i * blockAlign;
+        MappedByteBuffer segment = segments[(int) (byteIndex / segmentBytes)];
+        return segment.getShort((int) (byteIndex % segmentBytes)) / 32768.0; // Normalisation entre -1 et 1
+    }
+}
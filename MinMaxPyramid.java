@@ -0,0 +1,258 @@
+import java.util.Arrays;
+
+/**
+ * Min/max envelope of a signal, used to draw any length of signal with
+ * a number of segments proportional to the width of the canvas.
+ * <p>
+ * The static decimate method computes the envelope of one range in a single
+ * pass over the samples. An instance caches a multi-resolution pyramid
+ * (level k holds the min and max of each block of 2^k samples) so that the
+ * envelope of any range is then computed in a time proportional to the
+ * number of columns, whatever the number of samples.
+ * <p>
+ * The samples can come from any Source, such as a memory-mapped wav file.
+ * For very long signals the pyramid can start at a coarser base level, and
+ * the ranges too short for it are read directly from the source.
+ */
+public class MinMaxPyramid {
+
+    static final int BLOCKS_PER_COLUMN = 16; // blocs lus par colonne, précision de l'arrondi des colonnes
+
+    /**
+     * Random access to the samples of a signal
+     */
+    public interface Source {
+        /**
+         * @return the number of samples
+         */
+        int length();
+
+        /**
+         * @param i the index of a sample
+         * @return the value of the sample
+         */
+        double get(int i);
+    }
+
+    private final Source source; // signal d'origine (niveau 0)
+    private final int baseLevel; // premier niveau conservé
+    private final float[][] mins; // mins[k] : minimum de chaque bloc de 2^(baseLevel+k) échantillons
+    private final float[][] maxs; // maxs[k] : maximum de chaque bloc de 2^(baseLevel+k) échantillons
+
+    /**
+     * Build the pyramid of a signal
+     *
+     * @param sig the signal
+     */
+    public MinMaxPyramid(double[] sig) {
+        this(new Source() {
+            @Override
+            public int length() {
+                return sig.length;
+            }
+
+            @Override
+            public double get(int i) {
+                return sig[i];
+            }
+        }, 1);
+    }
+
+    /**
+     * Build the pyramid of a signal, starting at blocks of 2^baseLevel samples.
+     * The source is read once, sequentially.
+     *
+     * @param source    the samples of the signal
+     * @param baseLevel the first level kept (1 or more)
+     */
+    public MinMaxPyramid(Source source, int baseLevel) {
+        this.source = source;
+        this.baseLevel = baseLevel;
+        int n = source.length();
+        int levels = 0;
+        for (long size = ((long) n + (1 << baseLevel) - 1) >> baseLevel; size >= 1; size = (size + 1) / 2) {
+            levels++;
+            if (size == 1) {
+                break;
+            }
+        }
+        mins = new float[levels][];
+        maxs = new float[levels][];
+        if (levels == 0) {
+            return;
+        }
+
+        // Niveau de base à partir des échantillons
+        int block = 1 << baseLevel;
+        int size = (int) (((long) n + block - 1) >> baseLevel);
+        mins[0] = new float[size];
+        maxs[0] = new float[size];
+        for (int i = 0; i < size; i++) {
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            int end = (int) Math.min(n, (long) (i + 1) * block);
+            for (int j = i * block; j < end; j++) {
+                double v = source.get(j);
+                lo = Math.min(lo, v);
+                hi = Math.max(hi, v);
+            }
+            mins[0][i] = (float) lo;
+            maxs[0][i] = (float) hi;
+        }
+
+        // Puis chaque niveau à partir du précédent
+        for (int k = 1; k < levels; k++) {
+            size = (mins[k - 1].length + 1) / 2;
+            mins[k] = new float[size];
+            maxs[k] = new float[size];
+            for (int i = 0; i < size; i++) {
+                int a = 2 * i;
+                int b = 2 * i + 1;
+                boolean pair = b < mins[k - 1].length;
+                mins[k][i] = pair ? Math.min(mins[k - 1][a], mins[k - 1][b]) : mins[k - 1][a];
+                maxs[k][i] = pair ? Math.max(maxs[k - 1][a], maxs[k - 1][b]) : maxs[k - 1][a];
+            }
+        }
+    }
+
+    /**
+     * @return the number of samples of the signal
+     */
+    public int length() {
+        return source.length();
+    }
+
+    /**
+     * Copy a range of samples from the source
+     *
+     * @param start the first sample to copy
+     * @param dest  the array to fill, dest.length samples are copied
+     */
+    public void read(int start, double[] dest) {
+        for (int i = 0; i < dest.length; i++) {
+            dest[i] = source.get(start + i);
+        }
+    }
+
+    /**
+     * Compute the min/max envelope of a range of a signal in a single pass
+     *
+     * @param sig   the signal
+     * @param start the first sample of the range
+     * @param stop  the last sample of the range (included)
+     * @param min   the minimum of each column, min.length is the number of columns
+     * @param max   the maximum of each column, same length as min
+     */
+    public static void decimate(double[] sig, int start, int stop, double[] min, double[] max) {
+        int columns = min.length;
+        long n = stop - start + 1;
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (int i = start; i <= stop; i++) {
+            int c = (int) ((i - start) * (long) columns / n); // colonne de l'échantillon
+            double v = sig[i];
+            if (v < min[c]) {
+                min[c] = v;
+            }
+            if (v > max[c]) {
+                max[c] = v;
+            }
+        }
+    }
+
+    /**
+     * Compute the min/max envelopes of the same range of several signals in a
+     * single shared pass: the column of each sample index is computed once
+     * for all the signals. Columns past the end of a shorter signal are left
+     * at +infinity / -infinity.
+     *
+     * @param sigs  the signals
+     * @param start the first sample of the range
+     * @param stop  the last sample of the range (included)
+     * @param min   min[k] receives the minimum of each column of sigs[k]
+     * @param max   max[k] receives the maximum of each column of sigs[k]
+     */
+    public static void decimate(double[][] sigs, int start, int stop, double[][] min, double[][] max) {
+        int columns = min[0].length;
+        long n = stop - start + 1;
+        for (int k = 0; k < sigs.length; k++) {
+            Arrays.fill(min[k], Double.POSITIVE_INFINITY);
+            Arrays.fill(max[k], Double.NEGATIVE_INFINITY);
+        }
+        for (int i = start; i <= stop; i++) {
+            int c = (int) ((i - start) * (long) columns / n); // colonne commune à tous les signaux
+            for (int k = 0; k < sigs.length; k++) {
+                if (i < sigs[k].length) {
+                    double v = sigs[k][i];
+                    if (v < min[k][c]) {
+                        min[k][c] = v;
+                    }
+                    if (v > max[k][c]) {
+                        max[k][c] = v;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the min/max envelope of a range of a source in a single pass
+     */
+    private static void decimate(Source sig, int start, int stop, double[] min, double[] max) {
+        int columns = min.length;
+        long n = stop - start + 1;
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (int i = start; i <= stop; i++) {
+            int c = (int) ((i - start) * (long) columns / n); // colonne de l'échantillon
+            double v = sig.get(i);
+            if (v < min[c]) {
+                min[c] = v;
+            }
+            if (v > max[c]) {
+                max[c] = v;
+            }
+        }
+    }
+
+    /**
+     * Compute the min/max envelope of a range from the pyramid.
+     * Each column is read from the coarsest level whose blocks still fit at
+     * least BLOCKS_PER_COLUMN times in it, so the column boundaries are
+     * rounded to at most one block, i.e. a small fraction of a column.
+     * When even the base level is too coarse, only the samples of the range
+     * are read from the source.
+     *
+     * @param start the first sample of the range
+     * @param stop  the last sample of the range (included)
+     * @param min   the minimum of each column, min.length is the number of columns
+     * @param max   the maximum of each column, same length as min
+     */
+    public void envelope(int start, int stop, double[] min, double[] max) {
+        int columns = min.length;
+        long n = stop - start + 1;
+        double perColumn = (double) n / columns;
+
+        // Niveau le plus grossier avec au moins BLOCKS_PER_COLUMN blocs par colonne
+        int level = perColumn < 2 * BLOCKS_PER_COLUMN ? 0
+                : Math.min(baseLevel + mins.length - 1, (int) (Math.log(perColumn / BLOCKS_PER_COLUMN) / Math.log(2)));
+        if (level < baseLevel) {
+            decimate(source, start, stop, min, max);
+            return;
+        }
+        float[] lo = mins[level - baseLevel];
+        float[] hi = maxs[level - baseLevel];
+        for (int c = 0; c < columns; c++) {
+            int a = (int) (start + c * n / columns);
+            int b = (int) (start + (c + 1) * n / columns - 1);
+            double cMin = Double.POSITIVE_INFINITY;
+            double cMax = Double.NEGATIVE_INFINITY;
+            for (int j = a >> level; j <= b >> level; j++) {
+                cMin = Math.min(cMin, lo[j]);
+                cMax = Math.max(cMax, hi[j]);
+            }
+            min[c] = cMin;
+            max[c] = cMax;
+        }
+    }
+}
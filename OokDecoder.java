@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Library entry point of the receiver: reads 16 bits PCM from a channel
+ * (raw, or a wav file whose header is skipped) and extracts the payload of
+ * the first frame with the streaming demodulator of DosRead.
+ * <p>
+ * A decoder is immutable and can be shared by any number of threads. Each
+ * thread gets its own demodulator and read buffer on its first call; they
+ * are reset and reused afterwards, so decoding a message allocates nothing
+ * once the thread is warm.
+ */
+public class OokDecoder {
+
+    static final int SCRATCH = 8192; // octets lus à la fois dans le canal
+
+    final int sampleRate; // fréquence d'échantillonnage attendue
+    final int bauds; // débit en symboles par seconde
+    final double threshold; // seuil de décision, entre 0 et 1
+    private final ThreadLocal<Worker> workers; // état de décodage propre à chaque fil
+
+    /**
+     * State of one thread: the demodulator, its read buffer and the
+     * destination of the current message
+     */
+    private class Worker implements OokDemodulator.Listener {
+        final OokDemodulator demod;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(SCRATCH).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer dest; // reçoit la charge utile
+        boolean done; // trame complète reçue
+        boolean overflow; // charge utile plus grande que dest
+
+        Worker() {
+            int period = sampleRate / bauds;
+            demod = new OokDemodulator(sampleRate, bauds, Math.min(DosRead.LP_FILTER, period / 4), threshold, this);
+        }
+
+        @Override
+        public void onByte(int value) {
+            if (done) {
+                return;
+            }
+            if (dest.hasRemaining()) {
+                dest.put((byte) value);
+            } else {
+                overflow = true;
+            }
+        }
+
+        @Override
+        public void onFrameEnd(int flag, int length) {
+            done = true;
+        }
+    }
+
+    /**
+     * Decoder with the parameters of DosRead (44100 Hz, 100 bauds, THRESHOLD)
+     */
+    public OokDecoder() {
+        this(44100, DosRead.BAUDS, DosRead.THRESHOLD / 65536.0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param sampleRate the sample rate of the signal
+     * @param bauds      the symbol rate
+     * @param threshold  the decision threshold, as a fraction of the full scale
+     */
+    public OokDecoder(int sampleRate, int bauds, double threshold) {
+        this.sampleRate = sampleRate;
+        this.bauds = bauds;
+        this.threshold = threshold;
+        workers = ThreadLocal.withInitial(Worker::new);
+    }
+
+    /**
+     * Read a channel until the end of the first frame (or the end of the
+     * channel) and put the payload of the frame into dest. The samples read
+     * after the end of the frame are dropped.
+     *
+     * @param in   the channel carrying the signal
+     * @param dest receives the payload, from its position
+     * @return the number of payload bytes put into dest, or -1 if the channel
+     *         ended before a complete frame
+     * @throws IOException             if the channel cannot be read or is
+     *                                 not 16 bits PCM at the expected rate
+     * @throws BufferOverflowException if the payload does not fit in dest
+     */
+    public int decode(ReadableByteChannel in, ByteBuffer dest) throws IOException {
+        Worker w = workers.get();
+        w.demod.reset();
+        w.dest = dest;
+        w.done = false;
+        w.overflow = false;
+        int start = dest.position();
+        ByteBuffer buffer = w.buffer;
+        buffer.clear();
+        try {
+            skipWavHeader(in, buffer);
+            boolean eof = false;
+            while (!w.done && !eof) {
+                eof = in.read(buffer) < 0;
+                buffer.flip();
+                while (buffer.remaining() >= 2 && !w.done) {
+                    w.demod.process(buffer.getShort() / 32768.0); // Normalisation entre -1 et 1
+                }
+                buffer.compact();
+            }
+            if (!w.done) {
+                w.demod.flush(); // Termine le dernier symbole reçu
+            }
+        } finally {
+            w.dest = null; // pas de référence gardée vers le tampon de l'appelant
+        }
+        if (w.overflow) {
+            throw new BufferOverflowException();
+        }
+        return w.done ? dest.position() - start : -1;
+    }
+
+    /**
+     * Skip the header of a wav file if the channel starts with one, leaving
+     * the first samples in the buffer (in write mode)
+     */
+    private void skipWavHeader(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        if (!fill(in, buffer, 12) || (buffer.getInt(0) != 0x46464952 && buffer.getInt(0) != 0x34364652)
+                || buffer.getInt(8) != 0x45564157) {
+            return; // "RIFF" (ou "RF64") ... "WAVE" absents : PCM brut
+        }
+        buffer.flip();
+        buffer.position(12);
+        while (true) {
+            buffer.compact();
+            if (!fill(in, buffer, 8)) {
+                throw new IOException("bloc de données introuvable");
+            }
+            buffer.flip();
+            int id = buffer.getInt();
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            if (id == 0x61746164) { // "data"
+                buffer.compact();
+                return;
+            }
+            if (id == 0x20746d66) { // "fmt "
+                buffer.compact();
+                if (!fill(in, buffer, 16)) {
+                    throw new IOException("bloc fmt incomplet");
+                }
+                buffer.flip();
+                int rate = buffer.getInt(buffer.position() + 4);
+                int bits = buffer.getShort(buffer.position() + 14);
+                if (rate != sampleRate || bits != 16) {
+                    throw new IOException("format non pris en charge : " + rate + " Hz, " + bits + " bits");
+                }
+            }
+            skip(in, buffer, size + (size & 1)); // Blocs alignés sur 2 octets
+        }
+    }
+
+    /**
+     * Read until the buffer (in write mode) holds at least n bytes
+     *
+     * @return false if the channel ended before
+     */
+    private static boolean fill(ReadableByteChannel in, ByteBuffer buffer, int n) throws IOException {
+        while (buffer.position() < n) {
+            if (in.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skip n bytes from the buffer (in read mode), then from the channel
+     */
+    private static void skip(ReadableByteChannel in, ByteBuffer buffer, long n) throws IOException {
+        while (n > 0) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                if (in.read(buffer) < 0) {
+                    throw new IOException("fichier wav tronqué");
+                }
+                buffer.flip();
+            }
+            int step = (int) Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + step);
+            n -= step;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming OOK demodulator.
+ * Samples are pushed block by block, and each decided bit and each decoded
+ * payload byte is reported to a listener as soon as its symbol is complete,
+ * so the latency is bounded by one symbol plus the filter length.
+ * <p>
+ * The symbol clock is locked on the first rising edge of the envelope
+ * (the first 1 of the START_SEQ) and re-aligned on every following rising
+ * edge, which makes it tolerant to a small clock drift between sender and
+ * receiver.
+ */
+public class OokDemodulator {
+
+    /**
+     * Receiver of the demodulator output. All the methods are optional.
+     */
+    public interface Listener {
+        /**
+         * Called for each sample with the output of the low-pass filter
+         *
+         * @param env the filtered envelope, between 0 and 1
+         */
+        default void onEnvelope(double env) {
+        }
+
+        /**
+         * Called for each decided symbol of a frame, START_SEQ included
+         *
+         * @param bit   the decided bit
+         * @param level the mean envelope over the centre of the symbol
+         */
+        default void onBit(int bit, double level) {
+        }
+
+        /**
+         * Called for each payload byte, after inflating when the frame is compressed
+         *
+         * @param value the byte value (0-255)
+         */
+        default void onByte(int value) {
+        }
+
+        /**
+         * Called at the end of each frame
+         *
+         * @param flag   the flag byte of the frame
+         * @param length the payload length announced in the frame header
+         */
+        default void onFrameEnd(int flag, int length) {
+        }
+    }
+
+    private static final int SEARCH = 0; // attente d'un front montant
+    private static final int SYNC = 1; // lecture de la séquence de synchro
+    private static final int HEADER = 2; // lecture de l'entête de trame
+    private static final int PAYLOAD = 3; // lecture de la charge utile
+
+    final double period; // nombre d'échantillons par symbole
+    final double threshold; // seuil de décision, entre 0 et 1
+    final Listener listener; // destinataire des bits et octets décodés
+
+    private final double[] ring; // fenêtre du filtre passe-bas (moyenne mobile)
+    private int ringPos; // position courante dans la fenêtre
+    private double ringSum; // somme des échantillons de la fenêtre
+    private boolean above; // enveloppe au-dessus du seuil
+
+    private long index; // numéro de l'échantillon courant
+    private double symbolStart; // début du symbole courant (en échantillons)
+    private double acc; // somme de l'enveloppe au centre du symbole
+    private int accCount; // nombre d'échantillons sommés
+
+    private int state = SEARCH;
+    private int syncCount; // nombre de bits de synchro reçus
+    private int currentByte; // octet en cours d'assemblage
+    private int bitCount; // nombre de bits de l'octet en cours
+    private final int[] header = new int[DosRead.FRAME_HEADER];
+    private int headerCount; // nombre d'octets d'entête reçus
+    private int flag; // drapeau de la trame courante
+    private int length; // longueur de la charge utile de la trame courante
+    private int remaining; // octets de charge utile restant à recevoir
+    private Inflater inflater; // décompression au fil de l'eau, réutilisée d'une trame à l'autre
+    private boolean inflating; // trame compressée en cours de décompression
+    private final byte[] oneByte = new byte[1];
+    private final byte[] inflated = new byte[256];
+
+    private long frames; // nombre de trames complètes
+
+    /**
+     * Constructor
+     *
+     * @param sampleRate   the sample rate of the input signal
+     * @param bauds        the symbol rate
+     * @param filterLength the number of samples of the moving average filter
+     * @param threshold    the decision threshold, as a fraction of the full scale
+     * @param listener     the receiver of the decoded data
+     */
+    public OokDemodulator(int sampleRate, int bauds, int filterLength, double threshold, Listener listener) {
+        this.period = (double) sampleRate / bauds;
+        this.threshold = threshold;
+        this.listener = listener;
+        this.ring = new double[Math.max(1, filterLength)];
+    }
+
+    /**
+     * Push a block of samples normalized between -1 and 1
+     *
+     * @param samples the samples
+     * @param off     the first sample to push
+     * @param len     the number of samples to push
+     */
+    public void process(double[] samples, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            process(samples[i]);
+        }
+    }
+
+    /**
+     * Push one sample normalized between -1 and 1
+     *
+     * @param sample the sample
+     */
+    public void process(double sample) {
+        long n = index++;
+
+        // Redressement et filtre passe-bas (moyenne mobile récursive)
+        double x = sample < 0 ? -sample : sample;
+        ringSum += x - ring[ringPos];
+        ring[ringPos] = x;
+        ringPos = (ringPos + 1) % ring.length;
+        double env = ringSum / ring.length;
+        listener.onEnvelope(env);
+
+        // Détection des fronts montants avec hystérésis
+        boolean rising = !above && env > threshold;
+        above = above ? env > threshold / 2 : env > threshold;
+
+        if (state == SEARCH) {
+            if (rising) {
+                startSync(n);
+            }
+            return;
+        }
+
+        double pos = n - symbolStart;
+        if (rising && pos < period / 4) {
+            // Front en début de symbole : recalage de l'horloge
+            symbolStart = n;
+            pos = 0;
+        } else if (rising && pos > 3 * period / 4) {
+            // Front en fin de symbole : le symbole suivant commence plus tôt
+            endSymbol();
+            symbolStart = n;
+            pos = 0;
+        } else if (pos >= period) {
+            endSymbol();
+            symbolStart += period;
+            pos -= period;
+        }
+
+        if (state == SEARCH) {
+            if (rising) {
+                startSync(n);
+            }
+            return;
+        }
+
+        // Intégration de l'enveloppe sur la moitié centrale du symbole
+        if (pos >= period / 4 && pos < 3 * period / 4) {
+            acc += env;
+            accCount++;
+        }
+    }
+
+    /**
+     * Complete the symbol in progress at the end of the stream by pushing
+     * one symbol of silence
+     */
+    public void flush() {
+        int n = (int) Math.ceil(period) + ring.length;
+        for (int i = 0; i < n && state != SEARCH; i++) {
+            process(0.0);
+        }
+    }
+
+    /**
+     * Lock the symbol clock on a rising edge and start reading the START_SEQ
+     */
+    private void startSync(long n) {
+        state = SYNC;
+        symbolStart = n;
+        syncCount = 0;
+        acc = 0;
+        accCount = 0;
+    }
+
+    /**
+     * Decide the current symbol and feed the frame decoder
+     */
+    private void endSymbol() {
+        double level = accCount > 0 ? acc / accCount : 0;
+        acc = 0;
+        accCount = 0;
+        int bit = level > threshold ? 1 : 0;
+        listener.onBit(bit, level);
+
+        if (state == SYNC) {
+            if (bit != DosRead.START_SEQ[syncCount]) {
+                state = SEARCH; // fausse alerte, on attend le front suivant
+            } else if (++syncCount == DosRead.START_SEQ.length) {
+                state = HEADER;
+                headerCount = 0;
+                currentByte = 0;
+                bitCount = 0;
+            }
+            return;
+        }
+
+        currentByte = (currentByte << 1) | bit; // poids fort en premier
+        if (++bitCount == 8) {
+            onFrameByte(currentByte);
+            currentByte = 0;
+            bitCount = 0;
+        }
+    }
+
+    /**
+     * Handle one byte of the frame (header or payload)
+     */
+    private void onFrameByte(int b) {
+        if (state == HEADER) {
+            header[headerCount++] = b;
+            if (headerCount < header.length) {
+                return;
+            }
+            flag = header[0];
+            length = (header[1] << 8) | header[2];
+            if (flag != DosRead.FLAG_RAW && flag != DosRead.FLAG_DEFLATE) {
+                state = SEARCH; // entête invalide
+                return;
+            }
+            remaining = length;
+            if (flag == DosRead.FLAG_DEFLATE) {
+                if (inflater == null) {
+                    inflater = new Inflater(true);
+                }
+                inflater.reset();
+                inflating = true;
+            }
+            state = PAYLOAD;
+            if (remaining == 0) {
+                endFrame();
+            }
+            return;
+        }
+
+        remaining--;
+        if (flag == DosRead.FLAG_RAW) {
+            listener.onByte(b);
+        } else if (inflating) {
+            inflate(b);
+        }
+        if (remaining == 0) {
+            endFrame();
+        }
+    }
+
+    /**
+     * Feed one compressed byte to the inflater and forward the output
+     */
+    private void inflate(int b) {
+        oneByte[0] = (byte) b;
+        inflater.setInput(oneByte);
+        try {
+            int n;
+            while ((n = inflater.inflate(inflated)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    listener.onByte(inflated[i] & 0xFF);
+                }
+            }
+        } catch (DataFormatException e) {
+            // Flux corrompu : le reste de la trame est ignoré
+            inflating = false;
+            flag = -1;
+        }
+    }
+
+    /**
+     * Close the current frame and go back to waiting for the next one
+     */
+    private void endFrame() {
+        if (inflating) {
+            inflate(0); // octet factice requis par zlib en mode "nowrap"
+            inflating = false;
+        }
+        frames++;
+        listener.onFrameEnd(header[0], length);
+        state = SEARCH;
+    }
+
+    /**
+     * Go back to the initial state (no sample received, waiting for a frame)
+     * so that the demodulator can be reused for another stream without
+     * allocating anything
+     */
+    public void reset() {
+        Arrays.fill(ring, 0);
+        ringPos = 0;
+        ringSum = 0;
+        above = false;
+        index = 0;
+        symbolStart = 0;
+        acc = 0;
+        accCount = 0;
+        state = SEARCH;
+        inflating = false;
+        frames = 0;
+    }
+
+    /**
+     * @return the number of samples pushed so far
+     */
+    public long getSampleCount() {
+        return index;
+    }
+
+    /**
+     * @return the number of complete frames decoded so far
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+}
@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+
+/**
+ * Library entry point of the sender: turns a payload into the OOK signal
+ * of DosSend (same frame, same samples as DosSend -z --shape r) written as
+ * 16 bits PCM to a channel. Like DosSend, the symbol boundaries follow a
+ * fractional symbol clock (a symbol is one sample longer or shorter when
+ * sampleRate / bauds is not an integer), the carrier phase is continuous
+ * from one symbol to the next, the payload is compressed with DEFLATE when
+ * asked and when it makes it shorter, and the transitions can be raised
+ * cosine ramps.
+ * <p>
+ * An encoder is immutable and can be shared by any number of threads. One
+ * exact period of the carrier (carrierCycle samples) is computed once, and
+ * each thread writes through its own scratch buffer, and compresses with
+ * its own Deflater into its own MAX_PAYLOAD bytes buffer, all allocated on
+ * its first call, so encoding a message allocates nothing afterwards.
+ */
+public class OokEncoder {
+
+    static final int SCRATCH = 8192; // octets écrits à la fois dans le canal
+    static final int HEADER_SIZE = 44; // taille de l'entête wav
+
+    final int sampleRate; // fréquence d'échantillonnage
+    final int bauds; // débit en symboles par seconde
+    final boolean compress; // charge utile compressée si elle raccourcit
+    final double rolloff; // transitions en cosinus surélevé sur rolloff symbole (0 = créneaux)
+    private final double[] carrier; // porteuse sur un cycle exact, phase indexée par l'échantillon du signal
+    private final ThreadLocal<ByteBuffer> scratch; // tampon d'écriture propre à chaque fil
+    private final ThreadLocal<Deflater> deflater; // compresseur propre à chaque fil
+    private final ThreadLocal<ByteBuffer> compressed; // charge utile compressée, au plus MAX_PAYLOAD octets
+
+    /**
+     * Encoder with the parameters of DosSend (44100 Hz, 100 bauds, 1000 Hz carrier)
+     */
+    public OokEncoder() {
+        this(44100, 100, 1000);
+    }
+
+    /**
+     * Encoder without compression nor shaping
+     *
+     * @param sampleRate the sample rate of the signal
+     * @param bauds      the symbol rate
+     * @param carrier    the carrier frequency
+     */
+    public OokEncoder(int sampleRate, int bauds, int carrier) {
+        this(sampleRate, bauds, carrier, false, 0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param sampleRate the sample rate of the signal
+     * @param bauds      the symbol rate
+     * @param carrier    the carrier frequency
+     * @param compress   compress the payload with DEFLATE when it makes it
+     *                   shorter, as DosSend -z
+     * @param rolloff    the length of the raised cosine transitions, in
+     *                   symbols between 0 (square) and 1, as DosSend --shape
+     */
+    public OokEncoder(int sampleRate, int bauds, int carrier, boolean compress, double rolloff) {
+        if (rolloff < 0 || rolloff > 1) {
+            throw new IllegalArgumentException("arrondi des transitions hors de [0, 1] : " + rolloff);
+        }
+        this.sampleRate = sampleRate;
+        this.bauds = bauds;
+        this.compress = compress;
+        this.rolloff = rolloff;
+        int cycle = sampleRate / DosRead.gcd(sampleRate, carrier); // comme DosSend.carrierCycle
+        this.carrier = new double[cycle];
+        double omegaP = 2 * Math.PI * carrier / sampleRate;
+        for (int j = 0; j < cycle; j++) {
+            this.carrier[j] = Math.sin(omegaP * j); // Comme DosSend.modulateSymbol
+        }
+        scratch = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(SCRATCH).order(ByteOrder.LITTLE_ENDIAN));
+        deflater = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_COMPRESSION, true)); // comme DosSend.compressData
+        compressed = ThreadLocal.withInitial(() -> ByteBuffer.allocate(DosSend.MAX_PAYLOAD));
+    }
+
+    /**
+     * @param payloadBytes the size of the payload, once compressed
+     * @return the number of samples of the encoded frame
+     */
+    public long samples(int payloadBytes) {
+        return symbolStart(DosRead.START_SEQ.length + 8 * (DosRead.FRAME_HEADER + payloadBytes));
+    }
+
+    /**
+     * First sample of a symbol, as DosSend.symbolStart (DspKernels.symbolStart)
+     *
+     * @param i the index of the symbol (the number of symbols for the end of the signal)
+     * @return the index of its first sample in the signal
+     */
+    long symbolStart(int i) {
+        return DspKernels.symbolStart(i, (double) sampleRate / bauds);
+    }
+
+    /**
+     * Write the frame of a payload as raw PCM (16 bits signed, little
+     * endian, mono). The payload is sent compressed (flag FLAG_DEFLATE) if
+     * compression is enabled and makes it shorter, as is (flag FLAG_RAW)
+     * otherwise.
+     *
+     * @param payload the bytes between its position and its limit; the
+     *                position is moved to the limit
+     * @param out     the channel to write to
+     * @return the number of samples written
+     * @throws IOException if the channel cannot be written
+     */
+    public long encode(ByteBuffer payload, WritableByteChannel out) throws IOException {
+        ByteBuffer sent = framePayload(payload);
+        ByteBuffer buffer = scratch.get();
+        buffer.clear();
+        return writeFrame(sent, sent != payload, buffer, out);
+    }
+
+    /**
+     * Write the frame of a payload as a complete wav file, whose sizes are
+     * known in advance
+     *
+     * @param payload the bytes between its position and its limit
+     * @param out     the channel to write to
+     * @return the number of samples written
+     * @throws IOException if the channel cannot be written
+     */
+    public long encodeWav(ByteBuffer payload, WritableByteChannel out) throws IOException {
+        ByteBuffer sent = framePayload(payload);
+        long dataBytes = samples(sent.remaining()) * 2;
+        ByteBuffer buffer = scratch.get();
+        buffer.clear();
+        buffer.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        buffer.putInt((int) (dataBytes + HEADER_SIZE - 8));
+        buffer.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        buffer.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        buffer.putInt(16); // taille du bloc fmt
+        buffer.putShort((short) 1); // PCM
+        buffer.putShort((short) 1); // mono
+        buffer.putInt(sampleRate);
+        buffer.putInt(sampleRate * 2); // octets par seconde
+        buffer.putShort((short) 2); // octets par échantillon
+        buffer.putShort((short) 16); // bits par échantillon
+        buffer.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        buffer.putInt((int) dataBytes);
+        return writeFrame(sent, sent != payload, buffer, out);
+    }
+
+    /**
+     * Payload to put in the frame: the compressed bytes, in the buffer of
+     * the thread, when compression is enabled and makes it shorter, the
+     * payload itself otherwise. Its size is checked against the 16 bits
+     * length field.
+     *
+     * @param payload the bytes between its position and its limit; the
+     *                position is moved to the limit when it is compressed
+     * @return the bytes to send, between their position and their limit
+     */
+    private ByteBuffer framePayload(ByteBuffer payload) {
+        ByteBuffer sent = payload;
+        if (compress && payload.hasRemaining()) {
+            Deflater deflater = this.deflater.get();
+            ByteBuffer dest = compressed.get();
+            dest.clear();
+            dest.limit(Math.min(payload.remaining() - 1, dest.capacity())); // inutile d'envoyer plus long que l'original
+            int position = payload.position();
+            deflater.reset();
+            deflater.setInput(payload); // avance la position de la charge utile
+            deflater.finish();
+            while (!deflater.finished() && dest.hasRemaining()) {
+                deflater.deflate(dest);
+            }
+            if (deflater.finished()) {
+                payload.position(payload.limit());
+                sent = dest.flip();
+            } else {
+                payload.position(position); // compression inutile : charge utile envoyée telle quelle
+            }
+            deflater.reset(); // ne garde pas de référence sur la charge utile
+        }
+        int length = sent.remaining();
+        if (length > DosSend.MAX_PAYLOAD) {
+            throw new IllegalArgumentException("charge utile trop longue : " + length + " octets (max " + DosSend.MAX_PAYLOAD + ")");
+        }
+        return sent;
+    }
+
+    /**
+     * Write the samples of the frame: START_SEQ, flag, length and payload
+     *
+     * @param sent    the payload, between its position and its limit, moved to the limit
+     * @param deflate true if it is compressed
+     * @return the number of samples written
+     */
+    private long writeFrame(ByteBuffer sent, boolean deflate, ByteBuffer buffer, WritableByteChannel out)
+            throws IOException {
+        int flag = deflate ? DosRead.FLAG_DEFLATE : DosRead.FLAG_RAW;
+        int length = sent.remaining();
+        int symbols = DosRead.START_SEQ.length + 8 * (DosRead.FRAME_HEADER + length);
+        for (int i = 0; i < symbols; i++) {
+            writeSymbol(bit(i - 1, flag, sent), bit(i, flag, sent), bit(i + 1, flag, sent), i, buffer, out);
+        }
+        flush(buffer, out);
+        sent.position(sent.limit());
+        return samples(length);
+    }
+
+    /**
+     * Bit of a symbol of the frame, read in place
+     *
+     * @param i    the index of the symbol, 0 for the first bit of START_SEQ
+     * @param flag the flag byte of the frame
+     * @param sent the payload, between its position and its limit
+     * @return the bit, 0 before and after the frame (silence)
+     */
+    private static int bit(int i, int flag, ByteBuffer sent) {
+        int start = DosRead.START_SEQ.length;
+        if (i < 0 || i >= start + 8 * (DosRead.FRAME_HEADER + sent.remaining())) {
+            return 0;
+        } else if (i < start) {
+            return DosRead.START_SEQ[i];
+        }
+        int index = (i - start) / 8; // octet de la trame, entête compris
+        int value;
+        if (index == 0) {
+            value = flag;
+        } else if (index == 1) {
+            value = sent.remaining() >> 8;
+        } else if (index == 2) {
+            value = sent.remaining() & 0xFF;
+        } else {
+            value = sent.get(sent.position() + index - DosRead.FRAME_HEADER);
+        }
+        return (value >> (7 - (i - start) % 8)) & 1; // poids fort en premier
+    }
+
+    /**
+     * Write the samples of one symbol, emptying the buffer when it is full
+     */
+    private void writeSymbol(int previous, int bit, int next, int symbol, ByteBuffer buffer, WritableByteChannel out)
+            throws IOException {
+        long start = symbolStart(symbol);
+        int length = (int) (symbolStart(symbol + 1) - start);
+        for (int j = 0; j < length; j++) {
+            if (buffer.remaining() < 2) {
+                flush(buffer, out);
+            }
+            // Même calcul et même arrondi que DosSend.modulateSymbol, phase continue
+            double amplitude = DosSend.amplitude(previous, bit, next, j, length, rolloff);
+            buffer.putShort((short) (amplitude * carrier[(int) ((start + j) % carrier.length)] * Short.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Write the content of the buffer to the channel and clear it
+     */
+    private static void flush(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
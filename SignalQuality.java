@@ -0,0 +1,137 @@
+import java.util.Locale;
+
+/**
+ * Quality report of a received frame, computed from the soft value of each
+ * symbol (its mean envelope level before the decision).
+ * The symbols are split in two clusters by the decision threshold; the
+ * distance between the clusters compared to their spread gives an SNR
+ * estimate and the eye opening, and the symbols close to the threshold are
+ * the ones that will turn into errors first when the channel degrades.
+ */
+public class SignalQuality {
+
+    static final double NEAR = 0.25; // écart relatif au seuil en dessous duquel une décision est fragile
+
+    final double[] levels; // valeur souple de chaque symbole
+    final double threshold; // seuil de décision, dans la même unité que levels
+    int ones; // symboles décidés à 1
+    int zeros; // symboles décidés à 0
+    double meanOn; // niveau moyen des 1
+    double meanOff; // niveau moyen des 0
+    double stdOn; // écart type des 1
+    double stdOff; // écart type des 0
+    double minOn; // plus faible des 1
+    double maxOff; // plus fort des 0
+    int nearThreshold; // décisions à moins de NEAR * seuil du seuil
+
+    /**
+     * Compute the report of a list of symbols
+     *
+     * @param levels    the soft value of each symbol
+     * @param threshold the decision threshold, in the same unit
+     */
+    public SignalQuality(double[] levels, double threshold) {
+        this.levels = levels;
+        this.threshold = threshold;
+        double sumOn = 0, sumOff = 0, sqOn = 0, sqOff = 0;
+        minOn = Double.POSITIVE_INFINITY;
+        maxOff = Double.NEGATIVE_INFINITY;
+        for (double level : levels) {
+            if (level > threshold) {
+                ones++;
+                sumOn += level;
+                sqOn += level * level;
+                minOn = Math.min(minOn, level);
+            } else {
+                zeros++;
+                sumOff += level;
+                sqOff += level * level;
+                maxOff = Math.max(maxOff, level);
+            }
+            if (Math.abs(level - threshold) < NEAR * threshold) {
+                nearThreshold++;
+            }
+        }
+        meanOn = ones > 0 ? sumOn / ones : Double.NaN;
+        meanOff = zeros > 0 ? sumOff / zeros : Double.NaN;
+        stdOn = ones > 0 ? Math.sqrt(Math.max(0, sqOn / ones - meanOn * meanOn)) : Double.NaN;
+        stdOff = zeros > 0 ? Math.sqrt(Math.max(0, sqOff / zeros - meanOff * meanOff)) : Double.NaN;
+    }
+
+    /**
+     * @param i the index of a symbol
+     * @return the signed distance of the symbol to the threshold, relative to
+     *         the threshold: positive for a 1, negative for a 0, close to 0
+     *         for an uncertain decision
+     */
+    public double confidence(int i) {
+        return (levels[i] - threshold) / threshold;
+    }
+
+    /**
+     * @return the estimated SNR in dB: squared distance between the clusters
+     *         over the sum of their variances (NaN without both clusters)
+     */
+    public double snrDb() {
+        double d = meanOn - meanOff;
+        double var = stdOn * stdOn + stdOff * stdOff;
+        return 10 * Math.log10(d * d / Math.max(var, 1e-12));
+    }
+
+    /**
+     * @return the eye opening: gap between the weakest 1 and the strongest 0,
+     *         as a fraction of the distance between the clusters (1 = perfect,
+     *         0 or less = the clusters overlap)
+     */
+    public double eyeOpening() {
+        return (minOn - maxOff) / (meanOn - meanOff);
+    }
+
+    /**
+     * @return the smallest distance of a cluster mean to the threshold,
+     *         relative to the threshold
+     */
+    public double margin() {
+        return Math.min(meanOn - threshold, threshold - meanOff) / threshold;
+    }
+
+    /**
+     * @return "bon", "limite" (decisions close to the threshold, lower the
+     *         BAUDS soon) or "mauvais" (errors are likely)
+     */
+    public String verdict() {
+        if (ones == 0 || zeros == 0 || !(eyeOpening() > 0)) {
+            return "mauvais";
+        }
+        return nearThreshold > 0 || eyeOpening() < 0.5 ? "limite" : "bon";
+    }
+
+    /**
+     * @return the summary of the report as a JSON object (the soft values are
+     *         not included)
+     */
+    public String toJson() {
+        return "{\"symbols\":" + levels.length + ",\"ones\":" + ones + ",\"zeros\":" + zeros
+                + ",\"snrDb\":" + number(snrDb(), "%.2f") + ",\"eyeOpening\":" + number(eyeOpening(), "%.3f")
+                + ",\"margin\":" + number(margin(), "%.3f") + ",\"nearThreshold\":" + nearThreshold
+                + ",\"verdict\":\"" + verdict() + "\"}";
+    }
+
+    /**
+     * Format a number for JSON, null when it is not defined
+     */
+    private static String number(double value, String format) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.format(Locale.ROOT, format, value);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Qualité du signal : %s%n"
+                + "\tSymboles : %d (%d à 1, %d à 0)%n"
+                + "\tRSB estimé : %.1f dB%n"
+                + "\tOuverture de l'œil : %.0f %%%n"
+                + "\tMarge au seuil : %.0f %%%n"
+                + "\tDécisions proches du seuil : %d",
+                verdict(), levels.length, ones, zeros, snrDb(), 100 * eyeOpening(), 100 * margin(), nearThreshold);
+    }
+}
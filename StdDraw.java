@@ -35,6 +35,7 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Image;
 import java.awt.MediaTracker;
 import java.awt.RenderingHints;
@@ -52,6 +53,7 @@ import java.awt.geom.Arc2D;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 
 import java.awt.image.BufferedImage;
@@ -634,9 +636,12 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
     // singleton for callbacks: avoids generation of extra .class files
     private static StdDraw std = new StdDraw();
 
-    // the frame for drawing to the screen
+    // the frame for drawing to the screen (null in headless mode)
     private static JFrame frame;
 
+    // no display: draw only into the offscreen image, for save()
+    private static final boolean headless = GraphicsEnvironment.isHeadless();
+
     // mouse state
     private static boolean isMousePressed = false;
     private static double mouseX = 0;
@@ -664,7 +669,19 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      *         otherwise hides the drawing window.
      */
     public static void setVisible(boolean isVisible) {
-        frame.setVisible(isVisible);
+        if (frame != null) frame.setVisible(isVisible);
+    }
+
+    /**
+     * Returns true if there is no display (for example when the program runs
+     * with {@code -Djava.awt.headless=true}). In this case no window is
+     * created: drawings are only rendered into the offscreen image, and can
+     * be written to a file with {@code save()}.
+     *
+     * @return {@code true} if StdDraw runs without a window
+     */
+    public static boolean isHeadless() {
+        return headless;
     }
 
     /**
@@ -701,7 +718,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
     // init
     private static void init() {
         // JFrame stuff
-        if (frame == null) {
+        if (frame == null && !headless) {
             frame = new JFrame();
             frame.addKeyListener(std);    // JLabel cannot get keyboard focus
             frame.setFocusTraversalKeysEnabled(false);  // allow VK_TAB with isKeyPressed()
@@ -740,6 +757,9 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         hints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
         offscreen.addRenderingHints(hints);
 
+        // no window in headless mode
+        if (headless) return;
+
         // ImageIcon stuff
         RetinaImageIcon icon = new RetinaImageIcon(onscreenImage);
         JLabel draw = new JLabel(icon);
@@ -801,7 +821,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      */
     public static void setTitle(String title) {
         validateNotNull(title, "title");
-        frame.setTitle(title);
+        if (frame != null) frame.setTitle(title);
         windowTitle = title;
     }
 
@@ -1381,6 +1401,67 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         draw();
     }
 
+    /**
+     * Draws a polyline through the points
+     * (<em>x</em><sub>0</sub>, <em>y</em><sub>0</sub>),
+     * (<em>x</em><sub>1</sub>, <em>y</em><sub>1</sub>), ...,
+     * (<em>x</em><sub><em>n</em>–1</sub>, <em>y</em><sub><em>n</em>–1</sub>).
+     * The whole polyline is drawn as a single path, with a single repaint,
+     * which is much faster than calling {@code line()} for each segment.
+     *
+     * @param  x an array of all the <em>x</em>-coordinates of the polyline
+     * @param  y an array of all the <em>y</em>-coordinates of the polyline
+     * @throws IllegalArgumentException unless {@code x[]} and {@code y[]}
+     *         are of the same length
+     * @throws IllegalArgumentException if any coordinate is either NaN or infinite
+     * @throws IllegalArgumentException if either {@code x[]} or {@code y[]} is {@code null}
+     */
+    public static void polyline(double[] x, double[] y) {
+        validateNotNull(x, "x-coordinate array");
+        validateNotNull(y, "y-coordinate array");
+        for (int i = 0; i < x.length; i++) validate(x[i], "x[" + i + "]");
+        for (int i = 0; i < y.length; i++) validate(y[i], "y[" + i + "]");
+
+        int n1 = x.length;
+        int n2 = y.length;
+        if (n1 != n2) throw new IllegalArgumentException("arrays must be of the same length");
+        int n = n1;
+        if (n == 0) return;
+
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, n);
+        path.moveTo(scaleX(x[0]), scaleY(y[0]));
+        for (int i = 1; i < n; i++)
+            path.lineTo(scaleX(x[i]), scaleY(y[i]));
+        offscreen.draw(path);
+        draw();
+    }
+
+    /**
+     * Draws a polyline through the points (<em>i</em>, <em>y</em><sub><em>i</em></sub>)
+     * for <em>i</em> from {@code start} to {@code stop}, such as the samples of a signal.
+     * The whole polyline is drawn as a single path, with a single repaint.
+     *
+     * @param  y an array of all the <em>y</em>-coordinates
+     * @param  start the index of the first point
+     * @param  stop the index of the last point (included)
+     * @throws IllegalArgumentException if any coordinate is either NaN or infinite
+     * @throws IllegalArgumentException if {@code y[]} is {@code null}
+     * @throws IllegalArgumentException unless 0 &le; {@code start} &le; {@code stop} &lt; {@code y.length}
+     */
+    public static void polyline(double[] y, int start, int stop) {
+        validateNotNull(y, "y-coordinate array");
+        if (start < 0 || stop >= y.length || start > stop)
+            throw new IllegalArgumentException("invalid range [" + start + ", " + stop + "]");
+        for (int i = start; i <= stop; i++) validate(y[i], "y[" + i + "]");
+
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, stop - start + 1);
+        path.moveTo(scaleX(start), scaleY(y[start]));
+        for (int i = start + 1; i <= stop; i++)
+            path.lineTo(scaleX(i), scaleY(y[i]));
+        offscreen.draw(path);
+        draw();
+    }
+
     /**
      * Draws a filled polygon with the vertices
      * (<em>x</em><sub>0</sub>, <em>y</em><sub>0</sub>),
@@ -1566,6 +1647,43 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         draw();
     }
 
+    /**
+     * Draws the specified image centered at (<em>x</em>, <em>y</em>),
+     * rescaled to the specified bounding box.
+     * Unlike the other {@code picture()} methods, the image is given in
+     * memory, for example an image computed by the program.
+     *
+     * @param  x the center <em>x</em>-coordinate of the image
+     * @param  y the center <em>y</em>-coordinate of the image
+     * @param  image the image to draw
+     * @param  scaledWidth the width of the scaled image (in screen coordinates)
+     * @param  scaledHeight the height of the scaled image (in screen coordinates)
+     * @throws IllegalArgumentException if either {@code scaledWidth}
+     *         or {@code scaledHeight} is negative
+     * @throws IllegalArgumentException if {@code image} is {@code null}
+     * @throws IllegalArgumentException if {@code x}, {@code y}, {@code scaledWidth},
+     *         or {@code scaledHeight} is either NaN or infinite
+     */
+    public static void picture(double x, double y, Image image, double scaledWidth, double scaledHeight) {
+        validate(x, "x");
+        validate(y, "y");
+        validate(scaledWidth, "scaled width");
+        validate(scaledHeight, "scaled height");
+        validateNotNull(image, "image");
+        validateNonnegative(scaledWidth, "scaled width");
+        validateNonnegative(scaledHeight, "scaled height");
+
+        double xs = scaleX(x);
+        double ys = scaleY(y);
+        double ws = factorX(scaledWidth);
+        double hs = factorY(scaledHeight);
+        offscreen.drawImage(image, (int) Math.round(xs - ws/2.0),
+                                   (int) Math.round(ys - hs/2.0),
+                                   (int) Math.round(ws),
+                                   (int) Math.round(hs), null);
+        draw();
+    }
+
     /**
      * Draws the specified image centered at (<em>x</em>, <em>y</em>),
      * rescaled to the specified bounding box.
@@ -1786,7 +1904,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      */
     public static void show() {
         onscreen.drawImage(offscreenImage, 0, 0, null);
-        frame.repaint();
+        if (frame != null) frame.repaint();
     }
 
     // draw onscreen if defer is false
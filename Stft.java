@@ -0,0 +1,101 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Short-time Fourier transform engine for spectrograms.
+ * The FFT plan and the Hann window are built once and shared. The frames
+ * are reduced to a fixed number of columns (the maximum of the frames of
+ * each column), so the memory needed does not depend on the length of the
+ * recording, and the columns are computed in blocks spread over all the
+ * processors.
+ */
+public class Stft {
+
+    static final int BLOCK = 16; // colonnes calculées par tâche
+
+    final int size; // nombre d'échantillons par trame (taille de la FFT)
+    final int hop; // décalage entre deux trames
+    final Fft fft; // plan de FFT partagé
+    final double[] window; // fenêtre de Hann
+
+    /**
+     * Constructor
+     *
+     * @param size the number of samples of each frame, a power of 2
+     * @param hop  the number of samples between the starts of two frames
+     */
+    public Stft(int size, int hop) {
+        this.size = size;
+        this.hop = Math.max(1, hop);
+        fft = new Fft(size);
+        window = new double[size];
+        for (int i = 0; i < size; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / size);
+        }
+    }
+
+    /**
+     * @param length the number of samples of the signal
+     * @return the number of complete frames of the signal
+     */
+    public int frameCount(int length) {
+        return length < size ? 0 : (length - size) / hop + 1;
+    }
+
+    /**
+     * Compute the power spectrum of one frame, in dB
+     *
+     * @param src   the signal
+     * @param frame the index of the frame
+     * @param re    scratch array of size values
+     * @param im    scratch array of size values
+     * @param db    receives the power of the first db.length bins (at most size / 2)
+     */
+    public void frame(MinMaxPyramid.Source src, int frame, double[] re, double[] im, float[] db) {
+        int offset = frame * hop;
+        for (int i = 0; i < size; i++) {
+            re[i] = src.get(offset + i) * window[i]; // Fenêtrage
+            im[i] = 0;
+        }
+        fft.transform(re, im);
+        for (int k = 0; k < db.length; k++) {
+            double power = re[k] * re[k] + im[k] * im[k];
+            db[k] = (float) (10 * Math.log10(power + 1e-20));
+        }
+    }
+
+    /**
+     * Compute a spectrogram reduced to a number of columns. Each column
+     * keeps, for each bin, the maximum over its frames.
+     *
+     * @param src     the signal
+     * @param columns the number of columns (the width of the picture)
+     * @param bins    the number of frequency bins kept (at most size / 2)
+     * @return the power in dB, indexed by [column][bin]
+     */
+    public float[][] columns(MinMaxPyramid.Source src, int columns, int bins) {
+        int frames = frameCount(src.length());
+        int width = Math.max(1, Math.min(columns, frames));
+        float[][] out = new float[width][bins];
+        int blocks = (width + BLOCK - 1) / BLOCK;
+
+        // Chaque bloc de colonnes est indépendant : calcul en parallèle
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            double[] re = new double[size];
+            double[] im = new double[size];
+            float[] db = new float[bins];
+            for (int c = b * BLOCK; c < Math.min(width, (b + 1) * BLOCK); c++) {
+                int first = (int) ((long) c * frames / width);
+                int last = (int) ((long) (c + 1) * frames / width);
+                Arrays.fill(out[c], Float.NEGATIVE_INFINITY);
+                for (int f = first; f < Math.max(last, first + 1) && f < frames; f++) {
+                    frame(src, f, re, im, db);
+                    for (int k = 0; k < bins; k++) {
+                        out[c][k] = Math.max(out[c][k], db[k]);
+                    }
+                }
+            }
+        });
+        return out;
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming writer of a PCM wav file of any length, in one pass.
+ * <p>
+ * The header is written first with placeholder sizes and a 28 bytes "JUNK"
+ * chunk, then the samples are appended as they come. At close the real
+ * sizes are written in place with positional writes on the FileChannel. If
+ * the file went beyond the 4 GB that the 32 bits RIFF sizes can hold, the
+ * header is turned into RF64 (EBU Tech 3306): "RIFF" becomes "RF64", the
+ * JUNK chunk becomes the "ds64" chunk that holds the 64 bits sizes, and the
+ * 32 bits sizes are set to 0xFFFFFFFF. The samples never move.
+ * <p>
+ * append() reopens an existing file in the same way, positioned at the end
+ * of its data chunk, so that new samples are added without rewriting the
+ * previous ones.
+ */
+public class WavWriter implements WritableByteChannel {
+
+    static final int HEADER_SIZE = 80; // RIFF + JUNK/ds64 + fmt + entête du bloc data
+    static final int DS64_OFFSET = 12; // position du bloc JUNK, futur ds64
+    static final int DS64_SIZE = 28; // tailles RIFF, data et nombre d'échantillons sur 64 bits, table vide
+    static final long RIFF_LIMIT = 0xFFFFFFFFL; // plus grande taille sur 32 bits
+    static final int MAGIC_RIFF = 0x46464952; // "RIFF" lu en little endian
+    static final int MAGIC_RF64 = 0x34364652; // "RF64" lu en little endian
+
+    final FileChannel channel; // fichier de sortie
+    final long dataSizeOffset; // position de la taille du bloc data
+    final long ds64Offset; // position du bloc JUNK ou ds64, -1 s'il n'y en a pas
+    final int blockAlign; // octets par échantillon, toutes voies comprises
+    long dataBytes; // octets de données écrits
+
+    /**
+     * Writer on an open file whose header is already written
+     */
+    private WavWriter(FileChannel channel, long dataSizeOffset, long ds64Offset, int blockAlign, long dataBytes) {
+        this.channel = channel;
+        this.dataSizeOffset = dataSizeOffset;
+        this.ds64Offset = ds64Offset;
+        this.blockAlign = blockAlign;
+        this.dataBytes = dataBytes;
+    }
+
+    /**
+     * Create (or truncate) a wav file and write its header with placeholder
+     * sizes
+     *
+     * @param path       the file to create
+     * @param sampleRate the sample rate
+     * @param channels   the number of channels
+     * @param bits       the number of bits per sample
+     * @return the writer, positioned at the start of the data
+     * @throws IOException if the file cannot be created
+     */
+    public static WavWriter create(Path path, int sampleRate, int channels, int bits) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return create(channel, sampleRate, channels, bits);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the header with placeholder sizes at the start of an open file
+     * (the standard output redirected to a file for example). Its writes
+     * must land at the requested positions: not a file opened in append
+     * mode.
+     *
+     * @param channel    the file, positioned at 0
+     * @param sampleRate the sample rate
+     * @param channels   the number of channels
+     * @param bits       the number of bits per sample
+     * @return the writer, positioned at the start of the data
+     * @throws IOException if the file cannot be written
+     */
+    public static WavWriter create(FileChannel channel, int sampleRate, int channels, int bits) throws IOException {
+        int blockAlign = channels * bits / 8;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC_RIFF).putInt(0); // taille réécrite à la fermeture
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'J').put((byte) 'U').put((byte) 'N').put((byte) 'K').putInt(DS64_SIZE);
+        header.position(header.position() + DS64_SIZE); // place réservée pour ds64
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ').putInt(16);
+        header.putShort((short) 1); // PCM
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * blockAlign); // octets par seconde
+        header.putShort((short) blockAlign);
+        header.putShort((short) bits);
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a').putInt(0);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        return new WavWriter(channel, HEADER_SIZE - 4, DS64_OFFSET, blockAlign, 0);
+    }
+
+    /**
+     * Open an existing wav file to add samples at the end of its data chunk.
+     * The file must have the given format and its data chunk must be the
+     * last one. A streamed file (sizes 0 or 0xFFFFFFFF) is taken up to its
+     * end.
+     *
+     * @param path       the file to complete
+     * @param sampleRate the sample rate of the new samples
+     * @param channels   their number of channels
+     * @param bits       their number of bits per sample
+     * @return the writer, positioned after the last sample of the file
+     * @throws IOException if the file cannot be read, is not a wav file of
+     *                     this format or has chunks after its data
+     */
+    public static WavWriter append(Path path, int sampleRate, int channels, int bits) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer chunk = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(chunk, 0);
+            int magic = chunk.getInt(0);
+            if ((magic != MAGIC_RIFF && magic != MAGIC_RF64) || chunk.getInt(8) != 0x45564157) { // "WAVE"
+                throw new IOException("fichier wav invalide : " + path);
+            }
+
+            // Parcours des blocs jusqu'au bloc de données
+            long pos = 12;
+            long ds64Offset = -1;
+            long ds64DataSize = -1; // taille sur 64 bits d'un fichier RF64
+            boolean format = false; // bloc fmt lu et conforme
+            while (pos + 8 <= channel.size()) {
+                chunk.clear();
+                channel.read(chunk, pos);
+                int id = chunk.getInt(0);
+                long size = chunk.getInt(4) & 0xFFFFFFFFL;
+                if (id == 0x34367364) { // "ds64"
+                    ds64Offset = pos;
+                    ds64DataSize = chunk.getLong(16);
+                } else if (id == 0x4b4e554a && size >= DS64_SIZE && ds64Offset < 0) { // "JUNK" assez grand pour ds64
+                    ds64Offset = pos;
+                } else if (id == 0x20746d66) { // "fmt "
+                    format = chunk.getShort(8) == 1 && chunk.getShort(10) == channels
+                            && chunk.getInt(12) == sampleRate && chunk.getShort(22) == bits;
+                    if (!format) {
+                        throw new IOException("format différent : " + chunk.getInt(12) + " Hz, "
+                                + chunk.getShort(10) + " voies, " + chunk.getShort(22) + " bits");
+                    }
+                } else if (id == 0x61746164) { // "data"
+                    long dataOffset = pos + 8;
+                    if (magic == MAGIC_RF64 && size == 0xFFFFFFFFL && ds64DataSize >= 0) {
+                        size = ds64DataSize; // RF64 : la vraie taille est dans ds64
+                    } else if (size == 0 || size == 0xFFFFFFFFL) {
+                        size = channel.size() - dataOffset; // wav diffusé en flux : jusqu'à la fin
+                    }
+                    if (dataOffset + size + (size & 1) < channel.size()) {
+                        throw new IOException("des blocs suivent les données, ajout impossible : " + path);
+                    }
+                    if (!format) {
+                        throw new IOException("bloc fmt absent : " + path);
+                    }
+                    channel.position(dataOffset + size); // sur l'éventuel octet de bourrage
+                    return new WavWriter(channel, pos + 4, ds64Offset, channels * bits / 8, size);
+                }
+                pos += 8 + size + (size & 1); // Blocs alignés sur 2 octets
+            }
+            throw new IOException("bloc de données introuvable : " + path);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int n = channel.write(src);
+        dataBytes += n;
+        return n;
+    }
+
+    /**
+     * @return the number of data bytes written so far
+     */
+    public long dataBytes() {
+        return dataBytes;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Write the real sizes in the header (RF64 beyond 4 GB) and close the file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        long end = dataSizeOffset + 4 + dataBytes;
+        if ((dataBytes & 1) == 1) {
+            channel.write(ByteBuffer.allocate(1), end); // octet de bourrage : blocs alignés sur 2 octets
+            end++;
+        }
+        channel.truncate(end); // fichier complété : plus rien après les données
+        long riffSize = end - 8;
+        ByteBuffer field = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        if (riffSize <= RIFF_LIMIT) {
+            writeInt(field, MAGIC_RIFF, 0);
+            writeInt(field, (int) riffSize, 4);
+            writeInt(field, (int) dataBytes, dataSizeOffset);
+        } else if (ds64Offset >= 0) {
+            // Plus de 4 Go : entête RF64, tailles sur 64 bits dans ds64
+            // Le bloc JUNK (ou ds64) garde sa taille, au moins DS64_SIZE
+            writeInt(field, 0x34367364, ds64Offset); // "ds64"
+            ByteBuffer ds64 = ByteBuffer.allocate(DS64_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            ds64.putLong(riffSize).putLong(dataBytes).putLong(dataBytes / blockAlign).putInt(0);
+            ds64.flip();
+            while (ds64.hasRemaining()) {
+                channel.write(ds64, ds64Offset + 8 + ds64.position());
+            }
+            writeInt(field, MAGIC_RF64, 0);
+            writeInt(field, -1, 4); // 0xFFFFFFFF : taille dans ds64
+            writeInt(field, -1, dataSizeOffset);
+        } else {
+            // Pas de place pour ds64 (entête de 44 octets) : tailles inconnues,
+            // les lecteurs prennent les données jusqu'à la fin du fichier
+            writeInt(field, -1, 4);
+            writeInt(field, -1, dataSizeOffset);
+        }
+        channel.close();
+    }
+
+    /**
+     * Write a 32 bits little endian value at a position of the file
+     */
+    private void writeInt(ByteBuffer field, int value, long position) throws IOException {
+        field.clear();
+        field.putInt(0, value);
+        while (field.hasRemaining()) {
+            channel.write(field, position + field.position());
+        }
+    }
+}
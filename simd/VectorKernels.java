@@ -0,0 +1,103 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API version of the kernels of DspKernels, used by
+ * DspKernels.select() for the kernels listed in -Ddosook.simd. It needs the
+ * incubator module, both to compile and to run:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp . -d simd simd/VectorKernels.java
+ * java --add-modules jdk.incubator.vector -cp .:simd -Ddosook.simd=true DosRead message.wav
+ * </pre>
+ * The conversion, the rectifier and the moving average give exactly the
+ * results of the scalar loops (same operations in the same order, lane by
+ * lane). The per-symbol means add the samples in another order, so they can
+ * differ in the last bits.
+ */
+public class VectorKernels extends DspKernels {
+
+    static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED; // largeur native des registres
+    static final VectorSpecies<Short> S = D.withLanes(short.class); // même largeur, en échantillons 16 bits
+
+    @Override
+    public String name() {
+        return "vectoriel (" + D.vectorBitSize() + " bits, " + D.length() + " doubles)";
+    }
+
+    @Override
+    public void toDouble(ByteBuffer pcm, double[] dest, int n) {
+        int parts = S.length() / D.length(); // vecteurs de doubles par vecteur d'échantillons
+        int i = 0;
+        for (; i <= n - S.length(); i += S.length()) {
+            ShortVector v = ShortVector.fromByteBuffer(S, pcm, 2 * i, ByteOrder.LITTLE_ENDIAN);
+            for (int p = 0; p < parts; p++) {
+                // Division par 32768 = multiplication exacte par 2^-15
+                ((DoubleVector) v.convertShape(VectorOperators.S2D, D, p)).mul(1 / 32768.0)
+                        .intoArray(dest, i + p * D.length());
+            }
+        }
+        for (; i < n; i++) {
+            dest[i] = pcm.getShort(2 * i) / 32768.0;
+        }
+    }
+
+    @Override
+    public void rectify(double[] audio, int n) {
+        int i = 0;
+        for (; i < D.loopBound(n); i += D.length()) {
+            DoubleVector.fromArray(D, audio, i).abs().intoArray(audio, i);
+        }
+        for (; i < n; i++) {
+            audio[i] = Math.abs(audio[i]);
+        }
+    }
+
+    @Override
+    public void movingAverage(double[] in, double[] out, int n, int window) {
+        // Début : fenêtres incomplètes, boucle scalaire
+        int first = Math.min(n, window - 1);
+        super.movingAverage(in, out, first, window);
+
+        // Ensuite D.length() sorties à la fois : le k-ième échantillon de la
+        // fenêtre de chaque sortie est ajouté en même temps, du plus ancien au
+        // plus récent comme dans la boucle scalaire
+        int i = first;
+        for (; i <= n - D.length(); i += D.length()) {
+            DoubleVector sum = DoubleVector.zero(D);
+            for (int k = window - 1; k >= 0; k--) {
+                sum = sum.add(DoubleVector.fromArray(D, in, i - k));
+            }
+            sum.div(window).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            double sum = 0.0;
+            for (int j = i - window + 1; j <= i; j++) {
+                sum += in[j];
+            }
+            out[i] = sum / window;
+        }
+    }
+
+    @Override
+    public void symbolMeans(double[] audio, int n, double period, double[] means) {
+        int count = symbolCount(n, period);
+        for (int s = 0; s < count; s++) {
+            int start = symbolStart(s, period);
+            int end = symbolStart(s + 1, period);
+            DoubleVector acc = DoubleVector.zero(D);
+            int j = start;
+            for (; j <= end - D.length(); j += D.length()) {
+                acc = acc.add(DoubleVector.fromArray(D, audio, j));
+            }
+            double sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; j < end; j++) {
+                sum += audio[j];
+            }
+            means[s] = sum / (end - start);
+        }
+    }
+}